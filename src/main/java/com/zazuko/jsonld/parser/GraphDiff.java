@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+
+/**
+ * Compares two versions of a document element by element, producing the 
+ * triples added and removed.
+ * 
+ * Elements of the top-level @graph array are matched by their @id, elements 
+ * without @id by their content. Only elements that are new, changed or gone 
+ * are parsed, for the others just a digest of their bytes is computed. 
+ * 
+ * Blank nodes are scoped to the element they occur in, so the triples of a
+ * changed element containing blank nodes are removed and added again.
+ *
+ * @author user
+ */
+public class GraphDiff {
+
+    private GraphDiff() {
+    }
+
+    /**
+     * Compares two versions of a document.
+     * 
+     * @param previousDocument the previous version
+     * @param currentDocument the current version
+     * @param additions sink for the triples only in the current version
+     * @param removals sink for the triples only in the previous version
+     * @param base the base IRI or null
+     * @return an index with digests of the current version, it can be stored 
+     * and passed to the next comparison
+     */
+    public static GraphIndex diff(File previousDocument, File currentDocument,
+            TripleSink additions, TripleSink removals, IRI base) throws IOException {
+        return diff(GraphIndex.build(previousDocument, true, base), previousDocument,
+                currentDocument, additions, removals, base);
+    }
+
+    /**
+     * Compares a document with a previous version of which an index with 
+     * digests is available.
+     * 
+     * Without the previous document the triples of changed elements are 
+     * passed to additions, and elements that are gone are not reported, 
+     * {@link #removedElements} lists them.
+     * 
+     * The elements are compared once the root context is known, if it does
+     * not precede the @graph they are read from the current document again.
+     * 
+     * @param previous an index with digests of the previous version
+     * @param previousDocument the previous version, if null removed triples 
+     * cannot be produced and removals must be null as well
+     * @param currentDocument the current version
+     * @param additions sink for the triples only in the current version
+     * @param removals sink for the triples only in the previous version
+     * @param base the base IRI or null
+     * @return an index with digests of the current version, it can be stored 
+     * and passed to the next comparison
+     */
+    public static GraphIndex diff(final GraphIndex previous, File previousDocument, File currentDocument,
+            final TripleSink additions, final TripleSink removals, final IRI base) throws IOException {
+        if (!previous.hasDigests()) {
+            throw new IllegalArgumentException("The index of the previous version has no digests");
+        }
+        if ((previousDocument == null) != (removals == null)) {
+            throw new IllegalArgumentException("Removals require the previous document");
+        }
+        final GraphIndex current = new GraphIndex(currentDocument.length(), null, 1024, true);
+        try (InputStream in = new FileInputStream(currentDocument);
+                RandomAccessFile previousFile = previousDocument == null ? null : new RandomAccessFile(previousDocument, "r")) {
+            final DiffHandler handler = new DiffHandler(previous, previousFile, current, additions, removals, base);
+            new GraphScanner(in, true).scan(handler);
+            if (!handler.deferred.isEmpty()) {
+                try (RandomAccessFile currentFile = new RandomAccessFile(currentDocument, "r")) {
+                    handler.compareDeferred(currentFile);
+                }
+            }
+            if (previousFile != null) {
+                for (int i = handler.matched.nextClearBit(0); i < previous.size(); i = handler.matched.nextClearBit(i + 1)) {
+                    parseElement(previous.getContext(), readElement(previous, previousFile, i), removals, base);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the positions of the elements of the previous version that 
+     * are not in the current one.
+     * 
+     * @param previous an index with digests of the previous version
+     * @param current an index with digests of the current version
+     * @return the ordinals in the previous index, in ascending order
+     */
+    public static int[] removedElements(GraphIndex previous, GraphIndex current) {
+        if (!previous.hasDigests() || !current.hasDigests()) {
+            throw new IllegalArgumentException("Both indexes must have digests");
+        }
+        final Set<String> currentKeys = elementKeys(current).keySet();
+        final Map<String, Integer> previousKeys = elementKeys(previous);
+        final BitSet removed = new BitSet(previous.size());
+        for (Map.Entry<String, Integer> entry : previousKeys.entrySet()) {
+            if (!currentKeys.contains(entry.getKey())) {
+                removed.set(entry.getValue());
+            }
+        }
+        return removed.stream().toArray();
+    }
+
+    /**
+     * Compares the elements of the current version with those of the 
+     * previous one as they are scanned, or after the scan if the root 
+     * context was not known when they were scanned.
+     */
+    private static class DiffHandler implements GraphScanner.Handler {
+
+        final BitSet matched;
+        //the elements scanned before the root context was known
+        final List<Integer> deferred = new ArrayList<>();
+        private final GraphIndex previous;
+        private final RandomAccessFile previousFile;
+        private final GraphIndex current;
+        private final TripleSink additions;
+        private final TripleSink removals;
+        private final IRI base;
+        private final Map<String, Integer> previousKeys;
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private final MessageDigest messageDigest = GraphIndex.createMessageDigest();
+        private boolean contextKnown = false;
+        private boolean contextChanged = false;
+        private JsonLdParser.Context idContext;
+
+        DiffHandler(GraphIndex previous, RandomAccessFile previousFile, GraphIndex current,
+                TripleSink additions, TripleSink removals, IRI base) {
+            this.previous = previous;
+            this.previousFile = previousFile;
+            this.current = current;
+            this.additions = additions;
+            this.removals = removals;
+            this.base = base;
+            previousKeys = elementKeys(previous);
+            matched = new BitSet(previous.size());
+            idContext = JsonLdParser.parseContext(null, base);
+        }
+
+        @Override
+        public void context(byte[] json) {
+            current.setContext(json);
+            idContext = JsonLdParser.parseContext(json, base);
+            //with another context unchanged bytes may mean different triples
+            contextChanged = !Arrays.equals(json, previous.getContext());
+            contextKnown = true;
+        }
+
+        @Override
+        public void element(int ordinal, long offset, long length, String rawId, byte[] json) {
+            final byte[] digest = messageDigest.digest(json);
+            //the raw @id is kept till it can be expanded
+            current.add(offset, length, rawId, digest);
+            if (contextKnown) {
+                compare(ordinal, json);
+            } else {
+                deferred.add(ordinal);
+            }
+        }
+
+        void compareDeferred(RandomAccessFile currentFile) {
+            //only now it is known that the root context is missing or follows the @graph
+            contextChanged = !Arrays.equals(current.getContext(), previous.getContext());
+            for (int ordinal : deferred) {
+                compare(ordinal, readElement(current, currentFile, ordinal));
+            }
+        }
+
+        private void compare(int ordinal, byte[] json) {
+            final String id = GraphIndex.expandId(idContext, current.getId(ordinal));
+            current.setId(ordinal, id);
+            final byte[] digest = current.getDigest(ordinal);
+            final Integer previousOrdinal = previousKeys.get(elementKey(occurrences, id, digest));
+            if (previousOrdinal == null) {
+                parseElement(current.getContext(), json, additions, base);
+                return;
+            }
+            matched.set(previousOrdinal);
+            if (contextChanged || !Arrays.equals(digest, previous.getDigest(previousOrdinal))) {
+                final Set<Triple> currentTriples = parseElement(current.getContext(), json, base);
+                if (previousFile == null) {
+                    emit(currentTriples, additions);
+                } else {
+                    final Set<Triple> previousTriples = parseElement(previous.getContext(),
+                            readElement(previous, previousFile, previousOrdinal), base);
+                    final Set<Triple> added = new LinkedHashSet<>(currentTriples);
+                    added.removeAll(previousTriples);
+                    previousTriples.removeAll(currentTriples);
+                    emit(previousTriples, removals);
+                    emit(added, additions);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the ordinals of the elements of the index by their key.
+     */
+    private static Map<String, Integer> elementKeys(GraphIndex index) {
+        final Map<String, Integer> result = new HashMap<>(index.size() * 2);
+        final Map<String, Integer> occurrences = new HashMap<>(index.size() * 2);
+        for (int i = 0; i < index.size(); i++) {
+            result.put(elementKey(occurrences, index.getId(i), index.getDigest(i)), i);
+        }
+        return result;
+    }
+
+    /**
+     * The key by which elements are matched, elements occurring repeatedly 
+     * are told apart by the number of their occurrence.
+     * 
+     * @param occurrences the number of occurrences of the keys so far, 
+     * updated by this method
+     */
+    private static String elementKey(Map<String, Integer> occurrences, String id, byte[] digest) {
+        final String key = id != null ? "@id " + id : "@digest " + toHex(digest);
+        final Integer previousOccurrences = occurrences.get(key);
+        final int occurrence = previousOccurrences == null ? 1 : previousOccurrences + 1;
+        occurrences.put(key, occurrence);
+        return occurrence == 1 ? key : key + " #" + occurrence;
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    private static byte[] readElement(GraphIndex index, RandomAccessFile document, int ordinal) {
+        try {
+            return index.readElement(document, ordinal);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void parseElement(byte[] context, byte[] element, TripleSink sink, IRI base) {
+        GraphIndex.parseElements(context, Collections.singletonList(element), sink, base);
+    }
+
+    private static Set<Triple> parseElement(byte[] context, byte[] element, IRI base) {
+        final Set<Triple> result = new LinkedHashSet<>();
+        parseElement(context, element, result::add, base);
+        return result;
+    }
+
+    private static void emit(Set<Triple> triples, TripleSink sink) {
+        for (Triple triple : triples) {
+            sink.add(triple);
+        }
+    }
+}
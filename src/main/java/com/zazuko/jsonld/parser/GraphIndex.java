@@ -0,0 +1,387 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.clerezza.commons.rdf.IRI;
+
+/**
+ * An index of the elements of the top-level @graph array of a document, 
+ * allowing to parse individual elements without reading the whole document.
+ * 
+ * The index holds the root context, as well as offset, length and @id of 
+ * every element and optionally a digest of its content. The @id is expanded
+ * with the root context and the base IRI, blank node identifiers are kept as
+ * they are. The index can be stored as sidecar file next to the document.
+ *
+ * @author user
+ */
+public class GraphIndex {
+
+    private static final int MAGIC = 0x4a4c4449;
+    private static final int VERSION = 1;
+    static final int DIGEST_LENGTH = 16;
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final long documentLength;
+    private byte[] context;
+    private int size = 0;
+    private long[] offsets;
+    private long[] lengths;
+    private String[] ids;
+    //DIGEST_LENGTH bytes per element, null if the index has no digests
+    private byte[] digests;
+    private Map<String, Integer> id2ordinal = null;
+
+    GraphIndex(long documentLength, byte[] context, int capacity, boolean withDigests) {
+        this.documentLength = documentLength;
+        this.context = context;
+        offsets = new long[capacity];
+        lengths = new long[capacity];
+        ids = new String[capacity];
+        digests = withDigests ? new byte[capacity * DIGEST_LENGTH] : null;
+    }
+
+    /**
+     * Creates an index by scanning the document.
+     */
+    public static GraphIndex build(File document) throws IOException {
+        return build(document, false, null);
+    }
+
+    /**
+     * Creates an index by scanning the document.
+     * 
+     * @param withDigests if a digest of the content of every element shall 
+     * be computed, as needed by {@link GraphDiff}
+     * @param base the base IRI against which relative @id values are 
+     * resolved, or null
+     */
+    public static GraphIndex build(File document, final boolean withDigests, IRI base) throws IOException {
+        final GraphIndex result = new GraphIndex(document.length(), null, 1024, withDigests);
+        final MessageDigest messageDigest = withDigests ? createMessageDigest() : null;
+        try (InputStream in = new FileInputStream(document)) {
+            new GraphScanner(in, withDigests).scan(new GraphScanner.Handler() {
+                @Override
+                public void context(byte[] json) {
+                    result.context = json;
+                }
+
+                @Override
+                public void element(int ordinal, long offset, long length, String id, byte[] json) {
+                    result.add(offset, length, id, withDigests ? messageDigest.digest(json) : null);
+                }
+            });
+        }
+        //the root context may follow the @graph
+        final JsonLdParser.Context context = JsonLdParser.parseContext(result.context, base);
+        for (int i = 0; i < result.size; i++) {
+            result.ids[i] = expandId(context, result.ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Reads an index previously stored with {@link #write(java.io.File)}.
+     */
+    public static GraphIndex read(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a graph index: " + indexFile);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported graph index version: " + version);
+            }
+            final long documentLength = in.readLong();
+            final byte[] context = readBytes(in);
+            final boolean withDigests = in.readBoolean();
+            final int size = in.readInt();
+            final GraphIndex result = new GraphIndex(documentLength, context, size, withDigests);
+            final byte[] digest = new byte[DIGEST_LENGTH];
+            for (int i = 0; i < size; i++) {
+                final long offset = in.readLong();
+                final long length = in.readLong();
+                final byte[] id = readBytes(in);
+                if (withDigests) {
+                    in.readFully(digest);
+                }
+                result.add(offset, length, id == null ? null : new String(id, UTF8), withDigests ? digest : null);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Stores the index, typically as sidecar file next to the document.
+     */
+    public void write(File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(documentLength);
+            writeBytes(out, context);
+            out.writeBoolean(digests != null);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(offsets[i]);
+                out.writeLong(lengths[i]);
+                writeBytes(out, ids[i] == null ? null : ids[i].getBytes(UTF8));
+                if (digests != null) {
+                    out.write(digests, i * DIGEST_LENGTH, DIGEST_LENGTH);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements in the @graph array
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the expanded @id of the element, null if the element has none
+     */
+    public String getId(int ordinal) {
+        return ids[ordinal];
+    }
+
+    /**
+     * @return the ordinal of the element with the given expanded @id, or -1 
+     * if there is no such element
+     */
+    public int getOrdinal(String id) {
+        if (id2ordinal == null) {
+            id2ordinal = new HashMap<>(size * 2);
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[i] != null) {
+                    id2ordinal.put(ids[i], i);
+                }
+            }
+        }
+        final Integer result = id2ordinal.get(id);
+        return result == null ? -1 : result;
+    }
+
+    void setId(int ordinal, String id) {
+        ids[ordinal] = id;
+        id2ordinal = null;
+    }
+
+    public long getOffset(int ordinal) {
+        return offsets[ordinal];
+    }
+
+    public long getLength(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    /**
+     * @return true if the index contains a digest of every element
+     */
+    public boolean hasDigests() {
+        return digests != null;
+    }
+
+    /**
+     * @return the digest of the content of the element
+     * @throws IllegalStateException if the index has no digests
+     */
+    public byte[] getDigest(int ordinal) {
+        if (digests == null) {
+            throw new IllegalStateException("Index has no digests");
+        }
+        return Arrays.copyOfRange(digests, ordinal * DIGEST_LENGTH, (ordinal + 1) * DIGEST_LENGTH);
+    }
+
+    byte[] getContext() {
+        return context;
+    }
+
+    void setContext(byte[] context) {
+        this.context = context;
+    }
+
+    /**
+     * Parses the elements with the given @id values, in the order given. 
+     * 
+     * @param document the indexed document
+     * @param sink the sink for the triples of the elements
+     * @param base the base IRI or null
+     * @param ids the expanded @id values
+     * @throws IllegalArgumentException if an @id is not in the index
+     */
+    public void parse(File document, TripleSink sink, IRI base, String... ids) throws IOException {
+        final int[] ordinals = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ordinals[i] = getOrdinal(ids[i]);
+            if (ordinals[i] == -1) {
+                throw new IllegalArgumentException("No element with @id " + ids[i]);
+            }
+        }
+        parseOrdinals(document, sink, base, ordinals);
+    }
+
+    /**
+     * Parses the elements at the given positions in the @graph array, in the 
+     * order given.
+     * 
+     * @param document the indexed document
+     * @param sink the sink for the triples of the elements
+     * @param base the base IRI or null
+     * @param ordinals the positions of the elements
+     */
+    public void parseOrdinals(File document, TripleSink sink, IRI base, int... ordinals) throws IOException {
+        final List<byte[]> elements = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(document, "r")) {
+            for (int ordinal : ordinals) {
+                elements.add(readElement(file, ordinal));
+            }
+        }
+        parseElements(context, elements, sink, base);
+    }
+
+    /**
+     * Reads the bytes of an element from the indexed document.
+     */
+    byte[] readElement(RandomAccessFile document, int ordinal) throws IOException {
+        if (document.length() != documentLength) {
+            throw new IllegalStateException("The index does not match the document");
+        }
+        if (lengths[ordinal] > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Element " + ordinal + " is too large to be read: "
+                    + lengths[ordinal] + " bytes");
+        }
+        final byte[] element = new byte[(int) lengths[ordinal]];
+        document.seek(offsets[ordinal]);
+        document.readFully(element);
+        return element;
+    }
+
+    /**
+     * Parses @graph elements as if they were in a document with the given 
+     * root context.
+     */
+    static void parseElements(byte[] context, List<byte[]> elements, TripleSink sink, IRI base) {
+        final List<InputStream> parts = new ArrayList<>();
+        //the parser needs @context to be the first key
+        parts.add(stream(context == null ? "{\"@graph\": [" : "{\"@context\": "));
+        if (context != null) {
+            parts.add(new ByteArrayInputStream(context));
+            parts.add(stream(", \"@graph\": ["));
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                parts.add(stream(","));
+            }
+            parts.add(new ByteArrayInputStream(elements.get(i)));
+        }
+        parts.add(stream("]}"));
+        JsonLdParser.parse(new SequenceInputStream(Collections.enumeration(parts)), sink, base);
+    }
+
+    /**
+     * Expands an @id as found by the GraphScanner.
+     */
+    static String expandId(JsonLdParser.Context context, String id) {
+        if (id == null || id.startsWith("_:")) {
+            return id;
+        }
+        return ((IRI) context.resolveRelativeUriOrCurie(id)).getUnicodeString();
+    }
+
+    void add(long offset, long length, String id, byte[] digest) {
+        if (size == offsets.length) {
+            final int capacity = Math.max(16, size * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            if (digests != null) {
+                digests = Arrays.copyOf(digests, capacity * DIGEST_LENGTH);
+            }
+        }
+        offsets[size] = offset;
+        lengths[size] = length;
+        ids[size] = id;
+        if (digests != null) {
+            System.arraycopy(digest, 0, digests, size * DIGEST_LENGTH, DIGEST_LENGTH);
+        }
+        size++;
+        id2ordinal = null;
+    }
+
+    static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            //every Java platform is required to support MD5
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static InputStream stream(String string) {
+        return new ByteArrayInputStream(string.getBytes(UTF8));
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final byte[] result = new byte[length];
+        in.readFully(result);
+        return result;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
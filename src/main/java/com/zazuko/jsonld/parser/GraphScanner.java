@@ -0,0 +1,401 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Scans the raw bytes of a JSON-LD document for the root context and the 
+ * elements of the top-level @graph array.
+ * 
+ * The scanner only looks at the structure of the JSON and does not validate 
+ * it, the content of the elements is left to the parser. Values are skipped 
+ * using a StructuralIndex of the buffer, so that the bytes of strings and of
+ * nested values are not looked at one by one.
+ *
+ * @author user
+ */
+class GraphScanner {
+
+    interface Handler {
+
+        /**
+         * Invoked with the value of the @context key of the root object.
+         */
+        void context(byte[] json);
+
+        /**
+         * Invoked for every element of the top-level @graph array.
+         * 
+         * @param ordinal the position of the element in the array
+         * @param offset the byte offset of the element in the document
+         * @param length the length of the element in bytes
+         * @param id the value of the @id key of the element or null
+         * @param json the bytes of the element if the scanner captures 
+         * elements, null otherwise
+         */
+        void element(int ordinal, long offset, long length, String id, byte[] json);
+
+        /**
+         * Invoked for every member of the root object other than @context 
+         * and @graph, if the scanner captures elements.
+         * 
+         * @param offset the byte offset of the member in the document
+         * @param json the bytes of the key, the colon and the value
+         */
+        default void member(long offset, byte[] json) {
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final InputStream in;
+    private final boolean captureElements;
+    private final byte[] buffer = new byte[65536];
+    private final StructuralIndex index = new StructuralIndex(buffer);
+    private int pos = 0;
+    private int limit = 0;
+    //the offset in the document of the first byte in buffer
+    private long bufferOffset = 0;
+    private ByteArrayOutputStream capture = null;
+    private int captureStart;
+
+    /**
+     * @param in the document
+     * @param captureElements if the bytes of the elements shall be passed to
+     * the handler
+     */
+    GraphScanner(InputStream in, boolean captureElements) {
+        this.in = RefillEventInputStream.wrap(in);
+        this.captureElements = captureElements;
+    }
+
+    void scan(Handler handler) throws IOException {
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            read();
+            return;
+        }
+        while (true) {
+            peekNonWhitespace();
+            final long memberOffset = position();
+            if (captureElements) {
+                startCapture();
+            }
+            final String key = readString();
+            expect(':');
+            if (key.equals("@context")) {
+                peekNonWhitespace();
+                startCapture();
+                skipValue();
+                handler.context(endCapture());
+            } else if (key.equals("@graph") && peekNonWhitespace() == '[') {
+                capture = null;
+                read();
+                scanGraph(handler);
+            } else {
+                skipValue();
+                if (captureElements) {
+                    handler.member(memberOffset, endCapture());
+                }
+            }
+            final int next = readNonWhitespace();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw unexpected(next);
+            }
+        }
+    }
+
+    private void scanGraph(Handler handler) throws IOException {
+        if (peekNonWhitespace() == ']') {
+            read();
+            return;
+        }
+        int ordinal = 0;
+        while (true) {
+            scanElement(handler, ordinal++);
+            final int next = readNonWhitespace();
+            if (next == ']') {
+                return;
+            }
+            if (next != ',') {
+                throw unexpected(next);
+            }
+        }
+    }
+
+    private void scanElement(Handler handler, int ordinal) throws IOException {
+        final int first = peekNonWhitespace();
+        final long offset = position();
+        if (captureElements) {
+            startCapture();
+        }
+        String id = null;
+        if (first == '{') {
+            read();
+            if (peekNonWhitespace() == '}') {
+                read();
+            } else {
+                while (true) {
+                    final String key = readString();
+                    expect(':');
+                    if (key.equals("@id") && peekNonWhitespace() == '"') {
+                        id = readString();
+                    } else {
+                        skipValue();
+                    }
+                    final int next = readNonWhitespace();
+                    if (next == '}') {
+                        break;
+                    }
+                    if (next != ',') {
+                        throw unexpected(next);
+                    }
+                }
+            }
+        } else {
+            skipValue();
+        }
+        final long length = position() - offset;
+        handler.element(ordinal, offset, length, id, captureElements ? endCapture() : null);
+    }
+
+    private void skipValue() throws IOException {
+        final int first = peekNonWhitespace();
+        switch (first) {
+            case '"': {
+                read();
+                skipStringContent();
+                return;
+            }
+            case '{':
+            case '[': {
+                int depth = 0;
+                do {
+                    if (pos == limit && !fill()) {
+                        throw unexpected(-1);
+                    }
+                    pos = index.nextContainerChar(pos, limit);
+                    if (pos == limit) {
+                        continue;
+                    }
+                    switch (buffer[pos++]) {
+                        case '{':
+                        case '[': {
+                            depth++;
+                            break;
+                        }
+                        case '}':
+                        case ']': {
+                            depth--;
+                            break;
+                        }
+                        case '"': {
+                            skipStringContent();
+                            break;
+                        }
+                    }
+                } while (depth > 0);
+                return;
+            }
+            default: {
+                //number, true, false or null
+                while (true) {
+                    final int c = peek();
+                    if (c == -1 || c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                        return;
+                    }
+                    read();
+                }
+            }
+        }
+    }
+
+    //skips to after the closing quote
+    private void skipStringContent() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw unexpected(-1);
+            }
+            pos = index.nextStringChar(pos, limit);
+            if (pos == limit) {
+                continue;
+            }
+            if (buffer[pos++] == '"') {
+                return;
+            }
+            //a backslash, the escaped character cannot end the string
+            if (read() == -1) {
+                throw unexpected(-1);
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final StringBuilder result = new StringBuilder();
+        while (true) {
+            final int c = read();
+            switch (c) {
+                case '"': {
+                    result.append(new String(bytes.toByteArray(), UTF8));
+                    return result.toString();
+                }
+                case '\\': {
+                    result.append(new String(bytes.toByteArray(), UTF8));
+                    bytes.reset();
+                    result.append(readEscape());
+                    break;
+                }
+                case -1: {
+                    throw unexpected(c);
+                }
+                default: {
+                    bytes.write(c);
+                }
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        final int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u': {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw new IOException("Invalid unicode escape at " + (position() - 1));
+                    }
+                    value = (value << 4) + digit;
+                }
+                return (char) value;
+            }
+            case -1:
+                throw unexpected(c);
+            default:
+                return (char) c;
+        }
+    }
+
+    private void expect(int expected) throws IOException {
+        final int c = readNonWhitespace();
+        if (c != expected) {
+            throw unexpected(c);
+        }
+    }
+
+    private IOException unexpected(int c) {
+        if (c == -1) {
+            return new IOException("Unexpected end of document");
+        }
+        return new IOException("Unexpected character '" + (char) c + "' at byte " + (position() - 1));
+    }
+
+    private int readNonWhitespace() throws IOException {
+        peekNonWhitespace();
+        return read();
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peek();
+        while (isWhitespace(c)) {
+            pos++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (capture != null) {
+            capture.write(buffer, captureStart, limit - captureStart);
+            captureStart = 0;
+        }
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        index.invalidate();
+        int read;
+        do {
+            //a read of no bytes is not the end of the stream
+            read = in.read(buffer);
+        } while (read == 0);
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private long position() {
+        return bufferOffset + pos;
+    }
+
+    private void startCapture() {
+        capture = new ByteArrayOutputStream();
+        captureStart = pos;
+    }
+
+    private byte[] endCapture() {
+        capture.write(buffer, captureStart, pos - captureStart);
+        final byte[] result = capture.toByteArray();
+        capture = null;
+        return result;
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.RDFTerm;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.AbstractGraph;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+
+/**
+ * A graph optimized for being loaded in bulk and queried afterwards, as when
+ * receiving the triples of the parser.
+ * 
+ * Every term is stored once and triples as three integers referencing the 
+ * terms. Adding a triple appends it unless it is already in the graph, the
+ * triples added since the last sort are looked up in a hash table of their 
+ * positions, the sorted ones by binary search. On the first read access 
+ * after adding the triples are sorted by subject, predicate and object and
+ * the hash table is dropped. The indexes by predicate, object and subject and by object, 
+ * subject and predicate are built when a filter first needs them.
+ *
+ * @author user
+ */
+public class IndexedGraph extends AbstractGraph {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<RDFTerm, Integer> term2id = new HashMap<>();
+    private RDFTerm[] terms = new RDFTerm[INITIAL_CAPACITY];
+    private int termCount = 0;
+    private int[] subjects = new int[INITIAL_CAPACITY];
+    private int[] predicates = new int[INITIAL_CAPACITY];
+    private int[] objects = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    //the triples before this position are sorted and without duplicates
+    private int sortedSize = 0;
+    //positions of triples removed since the last sort, null if none
+    private BitSet removed = null;
+    //open addressing hash table of the positions from sortedSize plus one, 
+    //zero marking a free slot, null if nothing was added since the last sort
+    private int[] added = null;
+    private int addedCount = 0;
+    //permutations of the sorted triples, null if not yet built
+    private int[] posIndex = null;
+    private int[] ospIndex = null;
+    //incremented whenever positions of triples change
+    private int modCount = 0;
+
+    @Override
+    protected synchronized boolean performAdd(Triple triple) {
+        final int termCountBefore = termCount;
+        final int s = getOrCreateId(triple.getSubject());
+        final int p = getOrCreateId(triple.getPredicate());
+        final int o = getOrCreateId(triple.getObject());
+        //a triple with a new term cannot be in the graph
+        if (termCount == termCountBefore && (containsSorted(s, p, o) || containsAdded(s, p, o))) {
+            return false;
+        }
+        if (size == subjects.length) {
+            final int capacity = size * 2;
+            subjects = Arrays.copyOf(subjects, capacity);
+            predicates = Arrays.copyOf(predicates, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        subjects[size] = s;
+        predicates[size] = p;
+        objects[size] = o;
+        insertAdded(size);
+        size++;
+        return true;
+    }
+
+    @Override
+    protected synchronized int performSize() {
+        return removed == null ? size : size - removed.cardinality();
+    }
+
+    @Override
+    protected boolean performRemove(Object o) {
+        if (!(o instanceof Triple)) {
+            return false;
+        }
+        final Triple triple = (Triple) o;
+        final int s = getId(triple.getSubject());
+        final int p = getId(triple.getPredicate());
+        final int obj = getId(triple.getObject());
+        if (s < 0 || p < 0 || obj < 0) {
+            return false;
+        }
+        final Iterator<Triple> iterator = filter(s, p, obj);
+        if (!iterator.hasNext()) {
+            return false;
+        }
+        iterator.next();
+        iterator.remove();
+        return true;
+    }
+
+    @Override
+    protected void performClear() {
+        term2id.clear();
+        terms = new RDFTerm[INITIAL_CAPACITY];
+        termCount = 0;
+        subjects = new int[INITIAL_CAPACITY];
+        predicates = new int[INITIAL_CAPACITY];
+        objects = new int[INITIAL_CAPACITY];
+        size = 0;
+        sortedSize = 0;
+        removed = null;
+        added = null;
+        addedCount = 0;
+        posIndex = null;
+        ospIndex = null;
+        modCount++;
+    }
+
+    @Override
+    protected Iterator<Triple> performFilter(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        final int s = getId(subject);
+        final int p = getId(predicate);
+        final int o = getId(object);
+        if (s == -1 || p == -1 || o == -1) {
+            return Collections.<Triple>emptyList().iterator();
+        }
+        return filter(s, p, o);
+    }
+
+    private synchronized Iterator<Triple> filter(int s, int p, int o) {
+        sort();
+        if (s >= 0 && (p >= 0 || o < 0)) {
+            return range(null, new Order(subjects, predicates, objects), s, p, o);
+        }
+        if (s >= 0) {
+            if (ospIndex == null) {
+                ospIndex = createIndex(new Order(objects, subjects, predicates));
+            }
+            return range(ospIndex, new Order(objects, subjects, predicates), o, s, p);
+        }
+        if (p >= 0) {
+            if (posIndex == null) {
+                posIndex = createIndex(new Order(predicates, objects, subjects));
+            }
+            return range(posIndex, new Order(predicates, objects, subjects), p, o, s);
+        }
+        if (o >= 0) {
+            if (ospIndex == null) {
+                ospIndex = createIndex(new Order(objects, subjects, predicates));
+            }
+            return range(ospIndex, new Order(objects, subjects, predicates), o, s, p);
+        }
+        return new PositionIterator(null, 0, size);
+    }
+
+    /**
+     * @return the id of the term, -2 for null and -1 for a term not in the
+     * graph
+     */
+    private int getId(RDFTerm term) {
+        if (term == null) {
+            return -2;
+        }
+        final Integer id = term2id.get(term);
+        return id == null ? -1 : id;
+    }
+
+    private int getOrCreateId(RDFTerm term) {
+        final Integer id = term2id.get(term);
+        if (id != null) {
+            return id;
+        }
+        if (termCount == terms.length) {
+            terms = Arrays.copyOf(terms, termCount * 2);
+        }
+        terms[termCount] = term;
+        term2id.put(term, termCount);
+        return termCount++;
+    }
+
+    private boolean containsSorted(int s, int p, int o) {
+        final Order order = new Order(subjects, predicates, objects);
+        final int[] keys = {s, p, o};
+        int low = 0;
+        int high = sortedSize - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int result = order.compareToKeys(middle, keys, 3);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return removed == null || !removed.get(middle);
+            }
+        }
+        return false;
+    }
+
+    private boolean containsAdded(int s, int p, int o) {
+        if (added == null) {
+            return false;
+        }
+        final int mask = added.length - 1;
+        for (int slot = hash(s, p, o) & mask; added[slot] != 0; slot = (slot + 1) & mask) {
+            final int position = added[slot] - 1;
+            if (subjects[position] == s && predicates[position] == p && objects[position] == o
+                    && (removed == null || !removed.get(position))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insertAdded(int position) {
+        if (added == null) {
+            added = new int[INITIAL_CAPACITY];
+        } else if ((addedCount + 1) * 4 > added.length * 3) {
+            final int[] previous = added;
+            added = new int[previous.length * 2];
+            for (int entry : previous) {
+                if (entry != 0) {
+                    putAdded(entry - 1);
+                }
+            }
+        }
+        putAdded(position);
+        addedCount++;
+    }
+
+    private void putAdded(int position) {
+        final int mask = added.length - 1;
+        int slot = hash(subjects[position], predicates[position], objects[position]) & mask;
+        while (added[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        added[slot] = position + 1;
+    }
+
+    private static int hash(int s, int p, int o) {
+        final int h = (s * 31 + p) * 31 + o;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the positions in the index of the triples matching the keys, 
+     * which are bound from the first one up to the first one that is negative.
+     */
+    private Iterator<Triple> range(int[] index, Order order, int first, int second, int third) {
+        final int boundKeys = second < 0 ? 1 : (third < 0 ? 2 : 3);
+        final int[] keys = {first, second, third};
+        int low = 0;
+        int high = size;
+        //lower bound
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (order.compareToKeys(position(index, middle), keys, boundKeys) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        final int from = low;
+        high = size;
+        //upper bound
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (order.compareToKeys(position(index, middle), keys, boundKeys) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return new PositionIterator(index, from, low);
+    }
+
+    private static int position(int[] index, int i) {
+        return index == null ? i : index[i];
+    }
+
+    /**
+     * Removes the triples marked as removed, sorts the added triples and 
+     * merges them with the sorted ones.
+     */
+    private synchronized void sort() {
+        if (sortedSize == size && removed == null) {
+            return;
+        }
+        added = null;
+        addedCount = 0;
+        if (removed != null) {
+            int target = 0;
+            int newSortedSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (removed.get(i)) {
+                    continue;
+                }
+                subjects[target] = subjects[i];
+                predicates[target] = predicates[i];
+                objects[target] = objects[i];
+                target++;
+                if (i < sortedSize) {
+                    newSortedSize++;
+                }
+            }
+            size = target;
+            sortedSize = newSortedSize;
+            removed = null;
+        }
+        final Order order = new Order(subjects, predicates, objects);
+        final int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        final int[] buffer = new int[size];
+        mergeSort(permutation, buffer, sortedSize, size, order);
+        merge(permutation, buffer, 0, sortedSize, size, order);
+        final int[] newSubjects = new int[Math.max(size, INITIAL_CAPACITY)];
+        final int[] newPredicates = new int[newSubjects.length];
+        final int[] newObjects = new int[newSubjects.length];
+        for (int i = 0; i < size; i++) {
+            final int position = permutation[i];
+            newSubjects[i] = subjects[position];
+            newPredicates[i] = predicates[position];
+            newObjects[i] = objects[position];
+        }
+        subjects = newSubjects;
+        predicates = newPredicates;
+        objects = newObjects;
+        sortedSize = size;
+        posIndex = null;
+        ospIndex = null;
+        modCount++;
+    }
+
+    private int[] createIndex(Order order) {
+        final int[] index = new int[size];
+        for (int i = 0; i < size; i++) {
+            index[i] = i;
+        }
+        mergeSort(index, new int[size], 0, size, order);
+        return index;
+    }
+
+    private static void mergeSort(int[] values, int[] buffer, int from, int to, Order order) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSort(values, buffer, from, middle, order);
+        mergeSort(values, buffer, middle, to, order);
+        merge(values, buffer, from, middle, to, order);
+    }
+
+    //merges the sorted ranges from-middle and middle-to
+    private static void merge(int[] values, int[] buffer, int from, int middle, int to, Order order) {
+        if (from == middle || middle == to || order.compare(values[middle - 1], values[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && order.compare(buffer[left], buffer[right]) <= 0)) {
+                values[i] = buffer[left++];
+            } else {
+                values[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Compares triple positions by three of the columns.
+     */
+    private static class Order {
+
+        private final int[] first;
+        private final int[] second;
+        private final int[] third;
+
+        Order(int[] first, int[] second, int[] third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        int compare(int x, int y) {
+            int result = Integer.compare(first[x], first[y]);
+            if (result == 0) {
+                result = Integer.compare(second[x], second[y]);
+                if (result == 0) {
+                    result = Integer.compare(third[x], third[y]);
+                }
+            }
+            return result;
+        }
+
+        int compareToKeys(int x, int[] keys, int boundKeys) {
+            int result = Integer.compare(first[x], keys[0]);
+            if (result != 0 || boundKeys == 1) {
+                return result;
+            }
+            result = Integer.compare(second[x], keys[1]);
+            if (result != 0 || boundKeys == 2) {
+                return result;
+            }
+            return Integer.compare(third[x], keys[2]);
+        }
+    }
+
+    private class PositionIterator implements Iterator<Triple> {
+
+        private final int[] index;
+        private final int[] iteratedSubjects = subjects;
+        private final int[] iteratedPredicates = predicates;
+        private final int[] iteratedObjects = objects;
+        private final RDFTerm[] iteratedTerms = terms;
+        private final int expectedModCount = modCount;
+        private int next;
+        private final int to;
+        private int current = -1;
+
+        PositionIterator(int[] index, int from, int to) {
+            this.index = index;
+            this.next = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < to;
+        }
+
+        @Override
+        public Triple next() {
+            if (next >= to) {
+                throw new NoSuchElementException();
+            }
+            current = position(index, next++);
+            return new TripleImpl((BlankNodeOrIRI) iteratedTerms[iteratedSubjects[current]],
+                    (IRI) iteratedTerms[iteratedPredicates[current]],
+                    iteratedTerms[iteratedObjects[current]]);
+        }
+
+        @Override
+        public void remove() {
+            if (current == -1) {
+                throw new IllegalStateException();
+            }
+            synchronized (IndexedGraph.this) {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (removed == null) {
+                    removed = new BitSet(size);
+                }
+                removed.set(current);
+            }
+            current = -1;
+        }
+    }
+}
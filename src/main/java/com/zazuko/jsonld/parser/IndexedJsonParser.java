@@ -0,0 +1,666 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import javax.json.JsonException;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * A JsonParser for UTF-8 encoded JSON reading strings with a 
+ * {@link StructuralIndex}.
+ *
+ * The end of a string is found by jumping to the next quote, backslash or
+ * control character in the bitmap of the index and its bytes are decoded at 
+ * once, only the structure between the strings is looked at byte by byte.
+ * As outside of strings valid JSON has only ASCII characters and line ends
+ * only in whitespace, locations in UTF-16 characters follow from the lengths
+ * of the decoded strings and the whitespace skipped, without counting the 
+ * characters of the input again.
+ * 
+ * The events, values, locations and the documents accepted are those of the
+ * parser of the JSON-P reference implementation, like that one it stops 
+ * reading at the end of the top-level value.
+ *
+ * @author user
+ */
+final class IndexedJsonParser implements JsonParser {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    //small documents are read into a small buffer, larger ones into one growing up to the maximum
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = 65536;
+
+    //what the next token may be
+    private static final int ROOT = 0;
+    private static final int FIRST_KEY = 1;
+    private static final int KEY = 2;
+    private static final int COLON = 3;
+    private static final int FIRST_VALUE = 4;
+    private static final int VALUE = 5;
+    private static final int AFTER_VALUE = 6;
+    private static final int END = 7;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private StructuralIndex index;
+    private int limit;
+    private boolean eof;
+    //the position of the next byte to read
+    private int pos = 0;
+    //the start of the bytes of the current token not decoded yet, -1 if none
+    private int mark = -1;
+    //the position after the current event, the bytes from it are kept on refills
+    private int eventEnd = 0;
+    private int state = ROOT;
+    //true for the objects and false for the arrays entered
+    private boolean[] containers = new boolean[32];
+    private int depth = 0;
+    private Event currentEvent;
+    //the value of a string event, for a number event created from the bytes on demand
+    private String value;
+    private int numberStart;
+    private boolean integral;
+    private final StringBuilder unescaped = new StringBuilder();
+    //the bytes moved out of the buffer
+    private long discarded = 0;
+    //the bytes of the strings read exceeding their UTF-16 characters
+    private long multiByteExcess = 0;
+    private long lineNumber = 1;
+    //the characters before the current line
+    private long lineStart = 0;
+    //the position in the input of the last carriage return, a line feed after it ends the same line
+    private long carriageReturn = -2;
+
+    IndexedJsonParser(InputStream in) {
+        this.in = in;
+        setBuffer(new byte[INITIAL_BUFFER_SIZE]);
+        limit = 0;
+        eof = false;
+    }
+
+    /**
+     * Parses the given bytes, which are used as buffer and must not change.
+     */
+    IndexedJsonParser(byte[] json) {
+        this.in = null;
+        setBuffer(json);
+        limit = json.length;
+        eof = true;
+    }
+
+    private void setBuffer(byte[] buffer) {
+        this.buffer = buffer;
+        index = new StructuralIndex(buffer);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (state == END) {
+            final int c = skipWhitespace();
+            if (c != -1) {
+                throw invalidToken(c, "EOF");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        value = null;
+        int c = skipWhitespace();
+        while (true) {
+            switch (state) {
+                case ROOT: {
+                    if (c != '{' && c != '[') {
+                        throw invalidToken(c, "CURLYOPEN, SQUAREOPEN");
+                    }
+                    return event(readValue(c));
+                }
+                case FIRST_KEY: {
+                    if (c == '}') {
+                        return event(endContainer());
+                    }
+                    //the first key is like any other
+                }
+                case KEY: {
+                    if (c != '"') {
+                        throw invalidToken(c, state == KEY ? "STRING" : "STRING, CURLYCLOSE");
+                    }
+                    value = readString();
+                    state = COLON;
+                    return event(Event.KEY_NAME);
+                }
+                case COLON: {
+                    if (c != ':') {
+                        throw invalidToken(c, "COLON");
+                    }
+                    pos++;
+                    state = VALUE;
+                    c = skipWhitespace();
+                    break;
+                }
+                case FIRST_VALUE: {
+                    if (c == ']') {
+                        return event(endContainer());
+                    }
+                    return event(readValue(c));
+                }
+                case VALUE: {
+                    return event(readValue(c));
+                }
+                case AFTER_VALUE: {
+                    final boolean inObject = containers[depth - 1];
+                    if (c == ',') {
+                        pos++;
+                        state = inObject ? KEY : VALUE;
+                        c = skipWhitespace();
+                        break;
+                    }
+                    if (c != (inObject ? '}' : ']')) {
+                        throw invalidToken(c, inObject ? "COMMA, CURLYCLOSE" : "COMMA, SQUARECLOSE");
+                    }
+                    return event(endContainer());
+                }
+                default: {
+                    throw new IllegalStateException("Unexpected parser state: " + state);
+                }
+            }
+        }
+    }
+
+    private Event event(Event event) {
+        currentEvent = event;
+        eventEnd = pos;
+        return event;
+    }
+
+    private Event readValue(int c) {
+        switch (c) {
+            case '{':
+            case '[': {
+                pos++;
+                if (depth == containers.length) {
+                    containers = Arrays.copyOf(containers, depth * 2);
+                }
+                containers[depth++] = c == '{';
+                state = c == '{' ? FIRST_KEY : FIRST_VALUE;
+                return c == '{' ? Event.START_OBJECT : Event.START_ARRAY;
+            }
+            case '"': {
+                value = readString();
+                state = AFTER_VALUE;
+                return Event.VALUE_STRING;
+            }
+            case 't': {
+                readLiteral("true");
+                state = AFTER_VALUE;
+                return Event.VALUE_TRUE;
+            }
+            case 'f': {
+                readLiteral("false");
+                state = AFTER_VALUE;
+                return Event.VALUE_FALSE;
+            }
+            case 'n': {
+                readLiteral("null");
+                state = AFTER_VALUE;
+                return Event.VALUE_NULL;
+            }
+            default: {
+                if (c != '-' && (c < '0' || c > '9')) {
+                    throw invalidToken(c, state == FIRST_VALUE ? "SQUARECLOSE, CURLYOPEN, SQUAREOPEN, STRING, NUMBER, TRUE, FALSE, NULL"
+                            : "CURLYOPEN, SQUAREOPEN, STRING, NUMBER, TRUE, FALSE, NULL");
+                }
+                readNumber();
+                state = AFTER_VALUE;
+                return Event.VALUE_NUMBER;
+            }
+        }
+    }
+
+    private Event endContainer() {
+        pos++;
+        final boolean object = containers[--depth];
+        state = depth == 0 ? END : AFTER_VALUE;
+        return object ? Event.END_OBJECT : Event.END_ARRAY;
+    }
+
+    private String readString() {
+        pos++;
+        mark = pos;
+        unescaped.setLength(0);
+        boolean escaped = false;
+        while (true) {
+            pos = index.nextStringEndChar(pos, limit);
+            if (pos == limit) {
+                if (!fill()) {
+                    decode();
+                    throw unexpectedChar(-1, pos);
+                }
+                continue;
+            }
+            final byte b = buffer[pos];
+            if (b == '"') {
+                final String result;
+                if (escaped) {
+                    unescaped.append(decode());
+                    result = unescaped.toString();
+                } else {
+                    result = decode();
+                }
+                pos++;
+                mark = -1;
+                return result;
+            }
+            if (b != '\\') {
+                decode();
+                throw unexpectedChar(b, pos);
+            }
+            //a character may be split by the escape only if the input is broken
+            unescaped.append(decode());
+            escaped = true;
+            pos++;
+            readEscape();
+            mark = pos;
+        }
+    }
+
+    /**
+     * Decodes the bytes from mark to pos, which are not escaped.
+     */
+    private String decode() {
+        final String result = new String(buffer, mark, pos - mark, UTF8);
+        multiByteExcess += pos - mark - result.length();
+        return result;
+    }
+
+    private void readEscape() {
+        final int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/': {
+                unescaped.append((char) c);
+                break;
+            }
+            case 'b': {
+                unescaped.append('\b');
+                break;
+            }
+            case 'f': {
+                unescaped.append('\f');
+                break;
+            }
+            case 'n': {
+                unescaped.append('\n');
+                break;
+            }
+            case 'r': {
+                unescaped.append('\r');
+                break;
+            }
+            case 't': {
+                unescaped.append('\t');
+                break;
+            }
+            case 'u': {
+                int unit = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = peek() == -1 ? -1 : Character.digit(buffer[pos], 16);
+                    if (digit == -1) {
+                        throw unexpectedChar(peek(), pos);
+                    }
+                    pos++;
+                    unit = unit * 16 + digit;
+                }
+                unescaped.append((char) unit);
+                break;
+            }
+            default: {
+                throw unexpectedChar(c, c == -1 ? pos : pos - 1);
+            }
+        }
+    }
+
+    private void readNumber() {
+        mark = pos;
+        integral = true;
+        int c = peek();
+        if (c == '-') {
+            pos++;
+            c = peek();
+        }
+        if (c == '0') {
+            pos++;
+            c = peek();
+        } else {
+            c = readDigits(c);
+        }
+        if (c == '.') {
+            integral = false;
+            pos++;
+            c = readDigits(peek());
+        }
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            pos++;
+            c = peek();
+            if (c == '+' || c == '-') {
+                pos++;
+                c = peek();
+            }
+            readDigits(c);
+        }
+        numberStart = mark;
+        mark = -1;
+    }
+
+    /**
+     * Reads one or more digits starting with c, the byte at pos.
+     *
+     * @return the byte after the digits
+     */
+    private int readDigits(int c) {
+        if (c < '0' || c > '9') {
+            throw unexpectedChar(c, pos);
+        }
+        pos++;
+        while (true) {
+            while (pos < limit) {
+                final byte b = buffer[pos];
+                if (b < '0' || b > '9') {
+                    return b & 0xFF;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    private void readLiteral(String literal) {
+        pos++;
+        for (int i = 1; i < literal.length(); i++) {
+            final int c = peek();
+            if (c != literal.charAt(i)) {
+                throw unexpectedChar(c, pos);
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * @return the first byte at or after pos that is not whitespace, -1 at the 
+     * end of the input, pos is left at it
+     */
+    private int skipWhitespace() {
+        while (true) {
+            while (pos < limit) {
+                final byte b = buffer[pos];
+                if (b != ' ' && b != '\t') {
+                    if (b != '\n' && b != '\r') {
+                        return b & 0xFF;
+                    }
+                    lineEnd(b);
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    private void lineEnd(byte b) {
+        final long position = discarded + pos;
+        if (b == '\r') {
+            carriageReturn = position;
+        }
+        if (b == '\r' || position != carriageReturn + 1) {
+            lineNumber++;
+        }
+        lineStart = position + 1 - multiByteExcess;
+    }
+
+    private int peek() {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos] & 0xFF;
+    }
+
+    private int read() {
+        final int c = peek();
+        if (c != -1) {
+            pos++;
+        }
+        return c;
+    }
+
+    /**
+     * Reads more input after the one in the buffer, moving the bytes from the
+     * end of the current event to the start of the buffer. The buffer is 
+     * replaced by a larger one if it is full and below the maximal size or if
+     * the current token does not fit.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        final int keep = eventEnd;
+        if (limit == buffer.length && (keep == 0 || buffer.length < MAX_BUFFER_SIZE)) {
+            final byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, keep, larger, 0, limit - keep);
+            setBuffer(larger);
+        } else {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            index.invalidate();
+        }
+        limit -= keep;
+        pos -= keep;
+        if (mark != -1) {
+            mark -= keep;
+        }
+        eventEnd = 0;
+        discarded += keep;
+        final int read;
+        try {
+            read = in.read(buffer, limit, buffer.length - limit);
+        } catch (IOException ex) {
+            throw new JsonException("I/O error while parsing JSON", ex);
+        }
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private JsonLocation locationAt(int position) {
+        final long chars = discarded + position - multiByteExcess;
+        return new IndexedLocation(lineNumber, chars - lineStart + 1, chars);
+    }
+
+    private JsonParsingException unexpectedChar(int c, int position) {
+        final JsonLocation location = locationAt(position);
+        return new JsonParsingException("Unexpected char " + c + " at " + describe(location), location);
+    }
+
+    private JsonParsingException invalidToken(int c, String expected) {
+        final String token = tokenName(c);
+        if (token == null) {
+            return unexpectedChar(c, pos);
+        }
+        final JsonLocation location = locationAt(pos);
+        return new JsonParsingException("Invalid token=" + token + " at " + describe(location)
+                + ". Expected tokens are: [" + expected + "]", location);
+    }
+
+    private static String tokenName(int c) {
+        switch (c) {
+            case -1:
+                return "EOF";
+            case '{':
+                return "CURLYOPEN";
+            case '}':
+                return "CURLYCLOSE";
+            case '[':
+                return "SQUAREOPEN";
+            case ']':
+                return "SQUARECLOSE";
+            case ':':
+                return "COLON";
+            case ',':
+                return "COMMA";
+            case '"':
+                return "STRING";
+            case 't':
+                return "TRUE";
+            case 'f':
+                return "FALSE";
+            case 'n':
+                return "NULL";
+            default:
+                return c == '-' || (c >= '0' && c <= '9') ? "NUMBER" : null;
+        }
+    }
+
+    private static String describe(JsonLocation location) {
+        return "(line no=" + location.getLineNumber() + ", column no=" + location.getColumnNumber()
+                + ", offset=" + location.getStreamOffset() + ")";
+    }
+
+    @Override
+    public String getString() {
+        if (value == null && currentEvent == Event.VALUE_NUMBER) {
+            //the bytes are kept in the buffer till the next event is read
+            value = new String(buffer, numberStart, eventEnd - numberStart, UTF8);
+        }
+        if (value == null) {
+            throw new IllegalStateException("JsonParser#getString() is valid only KEY_NAME, VALUE_STRING, "
+                    + "VALUE_NUMBER parser states. But current parser state is " + currentEvent);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        checkNumber("isIntegralNumber");
+        return integral;
+    }
+
+    @Override
+    public int getInt() {
+        checkNumber("getInt");
+        if (integral && eventEnd - numberStart < 10) {
+            return Integer.parseInt(getString());
+        }
+        return getBigDecimal().intValue();
+    }
+
+    @Override
+    public long getLong() {
+        checkNumber("getLong");
+        if (integral && eventEnd - numberStart < 19) {
+            return Long.parseLong(getString());
+        }
+        return getBigDecimal().longValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        checkNumber("getBigDecimal");
+        return new BigDecimal(getString());
+    }
+
+    private void checkNumber(String method) {
+        if (currentEvent != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("JsonParser#" + method + "() is valid only for VALUE_NUMBER parser state. "
+                    + "But current parser state is " + currentEvent);
+        }
+    }
+
+    /**
+     * @return the location after the current event
+     */
+    @Override
+    public JsonLocation getLocation() {
+        return locationAt(eventEnd);
+    }
+
+    @Override
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                throw new JsonException("I/O error while closing JSON parser", ex);
+            }
+        }
+    }
+
+    private static class IndexedLocation implements JsonLocation {
+
+        private final long lineNumber;
+        private final long columnNumber;
+        private final long streamOffset;
+
+        IndexedLocation(long lineNumber, long columnNumber, long streamOffset) {
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.streamOffset = streamOffset;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public long getStreamOffset() {
+            return streamOffset;
+        }
+    }
+}
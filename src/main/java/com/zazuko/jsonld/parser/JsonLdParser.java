@@ -23,26 +23,26 @@
  */
 package com.zazuko.jsonld.parser;
 
-import com.sun.javafx.scene.control.skin.VirtualFlow;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
-import javax.json.Json;
 import javax.json.stream.JsonParser;
 import javax.json.stream.JsonParser.Event;
-import javax.json.stream.JsonParserFactory;
 import javax.management.RuntimeErrorException;
 import org.apache.clerezza.commons.rdf.BlankNode;
 import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
@@ -64,17 +64,47 @@ import org.apache.clerezza.rdf.ontologies.RDF;
 public class JsonLdParser {
 
     /**
+     * Writes the triples of the files given as arguments as N-Triples to 
+     * standard output, reads standard input if no file or "-" is given.
+     * 
      * @param args the command line arguments
      */
-    public static void main(String[] args) throws FileNotFoundException {
-        final String fileName = args[0];
-        final File file = new File(fileName);
-        if (!file.exists()) {
-            System.err.println("File " + file + " does not exist");
-            System.exit(-1);
+    public static void main(String[] args) throws IOException {
+        final PrintWriter printWriter = createPrintWriter(System.out);
+        //shared by all files so that blank node labels are unique in the output
+        final TripleSink sink = createNTriplesSink(printWriter);
+        boolean failed = false;
+        try {
+            if (args.length == 0) {
+                parse(System.in, sink);
+            }
+            for (String fileName : args) {
+                if (fileName.equals("-")) {
+                    parse(System.in, sink);
+                    continue;
+                }
+                final File file = new File(fileName);
+                if (!file.exists()) {
+                    printWriter.flush();
+                    System.err.println("File " + file + " does not exist");
+                    failed = true;
+                    continue;
+                }
+                try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                    parse(in, sink);
+                }
+            }
+        } finally {
+            printWriter.flush();
+        }
+        //PrintWriter swallows IOExceptions, e.g. a closed pipe
+        if (printWriter.checkError()) {
+            System.err.println("Error writing output");
+            failed = true;
+        }
+        if (failed) {
+            System.exit(1);
         }
-        final FileInputStream in = new FileInputStream(file);
-        parse(in, System.out);
     }
 
     static void parse(final InputStream in, final OutputStream out) {
@@ -82,97 +112,431 @@ public class JsonLdParser {
     }
 
     static void parse(final InputStream in, final OutputStream out, final IRI base) {
-        final PrintWriter printWriter;
+        final PrintWriter printWriter = createPrintWriter(out);
+        try {
+            parse(in, createNTriplesSink(printWriter), base);
+        } finally {
+            printWriter.flush();
+        }
+    }
+
+    private static PrintWriter createPrintWriter(OutputStream out) {
         try {
-            printWriter = new PrintWriter(new OutputStreamWriter(out, "utf-8"), true);
+            return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, "utf-8")));
         } catch (UnsupportedEncodingException ex) {
             throw new RuntimeException(ex);
         }
-        parse(in, new TripleSink() {
+    }
+
+    private static TripleSink createNTriplesSink(Writer out) {
+        //N-Quads without graph label are N-Triples
+        final NQuadsWriter writer = new NQuadsWriter(out);
+        return triple -> writer.add(null, triple);
+    }
 
-            final WeakHashMap<BlankNode, String> node2IdMap = new WeakHashMap<>();
-            int idCounter = 1;
+    static void parse(final InputStream in, final Graph graph) {
+        parse(in, graph, null);
+    }
 
+    static void parse(final InputStream in, final Graph graph, final IRI base) {
+        parse(in, new TripleSink() {
             @Override
             public void add(Triple triple) {
-                printWriter.println(toNT(triple));
+                graph.add(triple);
             }
 
-            private String toNT(Triple triple) {
-                return toNT(triple.getSubject()) + " " + toNT(triple.getPredicate()) + " " + toNT(triple.getObject()) + ".";
+        }, base);
+    }
+
+    static void parse(InputStream in, TripleSink sink) {
+        parse(in, sink, null);
+    }
+
+    static void parse(InputStream in, TripleSink sink, final IRI base) {
+        parse(in, sink, base, new ParserOptions());
+    }
+
+    static void parse(InputStream in, TripleSink sink, final IRI base, ParserOptions options) {
+        parse(in, toQuadSink(sink), base, options);
+    }
+
+    /**
+     * Parses passing every statement to the sink together with the name of 
+     * the graph it is in. The contents of a @graph are in the graph named 
+     * by the @id of the node object containing it, or by a blank node if it 
+     * has none. For a top-level object without @id they are in the default
+     * graph.
+     */
+    static void parse(InputStream in, QuadSink sink, final IRI base) {
+        parse(in, sink, base, new ParserOptions());
+    }
+
+    static void parse(InputStream in, QuadSink sink, final IRI base, ParserOptions options) {
+        final LargeLiteralStore largeLiteralStore = createLargeLiteralStore(options);
+        final LargeLiteralFilter largeLiteralFilter = largeLiteralStore == null ? null
+                : new LargeLiteralFilter(in, largeLiteralStore, options.getLargeLiteralThreshold());
+        if (largeLiteralFilter != null) {
+            in = largeLiteralFilter;
+        }
+        try {
+            final JsonParser jsonParser = new IndexedJsonParser(RefillEventInputStream.wrap(in));
+            JsonLdParser jsonLdParser = new JsonLdParser(jsonParser, sink, base, options, largeLiteralStore,
+                    largeLiteralFilter);
+            jsonLdParser.parse();
+        } finally {
+            if (largeLiteralStore != null) {
+                largeLiteralStore.close();
             }
+        }
+    }
+
+    /**
+     * Parses with tokenizing, triple construction and the sink running on
+     * separate threads. The sink is invoked from a single thread, in document
+     * order, but not from the calling one. When the method returns the 
+     * threads have ended and the stream is closed.
+     */
+    static void parsePipelined(InputStream in, TripleSink sink, final IRI base) {
+        parsePipelined(in, sink, base, new ParserOptions());
+    }
+
+    static void parsePipelined(InputStream in, TripleSink sink, final IRI base, ParserOptions options) {
+        parsePipelined(in, toQuadSink(sink), base, options);
+    }
 
-            private String toNT(Literal literal) {
-                //TODO real impl
-                return literal.toString();
+    static void parsePipelined(InputStream in, QuadSink sink, final IRI base, ParserOptions options) {
+        final LargeLiteralStore largeLiteralStore = createLargeLiteralStore(options);
+        final LargeLiteralFilter largeLiteralFilter = largeLiteralStore == null ? null
+                : new LargeLiteralFilter(in, largeLiteralStore, options.getLargeLiteralThreshold());
+        if (largeLiteralFilter != null) {
+            in = largeLiteralFilter;
+        }
+        try {
+            final JsonParser jsonParser = new PipelinedJsonParser(new IndexedJsonParser(RefillEventInputStream.wrap(in)));
+            try {
+                final PipelinedQuadSink pipelinedSink = new PipelinedQuadSink(sink);
+                try {
+                    JsonLdParser jsonLdParser = new JsonLdParser(jsonParser, pipelinedSink, base, options,
+                            largeLiteralStore, largeLiteralFilter);
+                    jsonLdParser.parse();
+                } catch (RuntimeException | Error ex) {
+                    pipelinedSink.abort();
+                    throw ex;
+                }
+                pipelinedSink.finish();
+            } finally {
+                jsonParser.close();
+            }
+        } finally {
+            if (largeLiteralStore != null) {
+                largeLiteralStore.close();
             }
+        }
+    }
 
-            private String toNT(IRI iri) {
-                //TODO real impl
-                return iri.toString();
+    /**
+     * Parses in recovery mode, an element of the top-level @graph array that
+     * cannot be parsed is skipped and reported to the error handler. The 
+     * prefixes and triples of an element are passed to the sink when the 
+     * element has been parsed completely, the ones of properties of the root 
+     * object after the elements. The reported offsets are byte offsets in the 
+     * document as read, also if large literals are replaced.
+     * 
+     * Elements preceding the root @context are kept in memory and parsed 
+     * once it is known, or at the end if there is none. If they exceed 16MB
+     * they are parsed without waiting for a context, a root context 
+     * following them aborts the parse. Errors in the root context or in the 
+     * structure of the JSON, like unbalanced brackets, also abort the parse.
+     */
+    static void parseRecovering(InputStream in, TripleSink sink, final IRI base, ParseErrorHandler errorHandler) {
+        parseRecovering(in, sink, base, new ParserOptions(), errorHandler);
+    }
+
+    static void parseRecovering(InputStream in, final TripleSink sink, final IRI base, ParserOptions options,
+            final ParseErrorHandler errorHandler) {
+        final LargeLiteralStore largeLiteralStore = createLargeLiteralStore(options);
+        final LargeLiteralFilter largeLiteralFilter = largeLiteralStore == null ? null
+                : new LargeLiteralFilter(in, largeLiteralStore, options.getLargeLiteralThreshold());
+        if (largeLiteralFilter != null) {
+            in = largeLiteralFilter;
+        }
+        final ElementBuffer elementBuffer = new ElementBuffer();
+        final JsonLdParser jsonLdParser = new JsonLdParser(null, elementBuffer, base, options, largeLiteralStore,
+                largeLiteralFilter);
+        try {
+            final RecoveringHandler handler = new RecoveringHandler(jsonLdParser, largeLiteralFilter, elementBuffer,
+                    sink, errorHandler);
+            new GraphScanner(in, true).scan(handler);
+            handler.finish();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            if (largeLiteralStore != null) {
+                largeLiteralStore.close();
             }
+        }
+    }
 
-            private String toNT(BlankNode node) {
-                String id = node2IdMap.get(node);
-                if (id == null) {
-                    id = Integer.toString(idCounter);
-                    idCounter++;
-                    node2IdMap.put(node, id);
-                }
-                return "_:" + id;
+    /**
+     * Parses the elements as they are scanned, or once the root context is 
+     * known if they precede it.
+     */
+    private static class RecoveringHandler implements GraphScanner.Handler {
+
+        //the bytes of elements kept while waiting for the root context
+        private static final long MAX_DEFERRED_BYTES = 16L * 1024 * 1024;
+
+        private final JsonLdParser jsonLdParser;
+        private final LargeLiteralFilter largeLiteralFilter;
+        private final ElementBuffer elementBuffer;
+        private final TripleSink sink;
+        private final ParseErrorHandler errorHandler;
+        //the elements scanned before the root context
+        private final List<DeferredElement> deferred = new ArrayList<>();
+        private long deferredBytes = 0;
+        private boolean contextKnown = false;
+        //whether elements were parsed before the root context was known
+        private boolean parsedWithoutContext = false;
+        private final ByteArrayOutputStream rootMembers = new ByteArrayOutputStream();
+        private long rootMembersOffset = -1;
+        private long rootMembersCharOffset = -1;
+        //the bytes not starting a character in the json passed so far, outside of it there's only ASCII
+        private long extraBytes = 0;
+
+        RecoveringHandler(JsonLdParser jsonLdParser, LargeLiteralFilter largeLiteralFilter,
+                ElementBuffer elementBuffer, TripleSink sink, ParseErrorHandler errorHandler) {
+            this.jsonLdParser = jsonLdParser;
+            this.largeLiteralFilter = largeLiteralFilter;
+            this.elementBuffer = elementBuffer;
+            this.sink = sink;
+            this.errorHandler = errorHandler;
+        }
+
+        @Override
+        public void context(byte[] json) {
+            if (parsedWithoutContext) {
+                throw new RuntimeException("The root @context follows more than " + MAX_DEFERRED_BYTES
+                        + " bytes of @graph elements, which have been parsed without it");
             }
+            extraBytes += countExtraBytes(json);
+            jsonLdParser.parseRootContext(json);
+            elementBuffer.flush(sink);
+            contextKnown = true;
+            parseDeferred();
+        }
 
-            private String toNT(RDFTerm node) {
-                if (node instanceof Literal) {
-                    return toNT((Literal) node);
-                } else {
-                    return toNT((BlankNodeOrIRI) node);
-                }
+        @Override
+        public void element(int ordinal, long offset, long length, String id, byte[] json) {
+            final DeferredElement element = new DeferredElement(ordinal, toDocumentOffset(largeLiteralFilter, offset),
+                    jsonLdParser.toDocumentCharOffset(offset - extraBytes), json);
+            extraBytes += countExtraBytes(json);
+            if (contextKnown || parsedWithoutContext) {
+                parse(element);
+                return;
             }
+            deferred.add(element);
+            deferredBytes += json.length;
+            if (deferredBytes > MAX_DEFERRED_BYTES) {
+                parsedWithoutContext = true;
+                parseDeferred();
+            }
+        }
 
-            private String toNT(BlankNodeOrIRI node) {
-                if (node instanceof IRI) {
-                    return toNT((IRI) node);
-                } else {
-                    return toNT((BlankNode) node);
-                }
+        @Override
+        public void member(long offset, byte[] json) {
+            if (rootMembersOffset == -1) {
+                rootMembersOffset = toDocumentOffset(largeLiteralFilter, offset);
+                rootMembersCharOffset = jsonLdParser.toDocumentCharOffset(offset - extraBytes);
+                rootMembers.write('{');
+            } else {
+                rootMembers.write(',');
             }
-        }, base);
+            extraBytes += countExtraBytes(json);
+            rootMembers.write(json, 0, json.length);
+        }
+
+        /**
+         * Parses the elements still waiting for a root context and the 
+         * properties of the root object.
+         */
+        void finish() {
+            parseDeferred();
+            if (rootMembersOffset != -1) {
+                rootMembers.write('}');
+                jsonLdParser.parseElement(rootMembers.toByteArray(), -1, rootMembersOffset, rootMembersCharOffset,
+                        elementBuffer, sink, errorHandler);
+            }
+        }
+
+        private void parseDeferred() {
+            for (DeferredElement element : deferred) {
+                parse(element);
+            }
+            deferred.clear();
+            deferredBytes = 0;
+        }
+
+        private void parse(DeferredElement element) {
+            jsonLdParser.parseElement(element.json, element.ordinal, element.offset, element.charOffset,
+                    elementBuffer, sink, errorHandler);
+        }
     }
 
-    static void parse(final InputStream in, final Graph graph) {
-        parse(in, graph, null);
+    private static class DeferredElement {
+
+        final int ordinal;
+        final long offset;
+        final long charOffset;
+        final byte[] json;
+
+        DeferredElement(int ordinal, long offset, long charOffset, byte[] json) {
+            this.ordinal = ordinal;
+            this.offset = offset;
+            this.charOffset = charOffset;
+            this.json = json;
+        }
     }
 
-    static void parse(final InputStream in, final Graph graph, final IRI base) {
-        parse(in, new TripleSink() {
-            @Override
-            public void add(Triple triple) {
-                graph.add(triple);
+    /**
+     * @return the byte offset in the document before replacing large literals
+     */
+    private static long toDocumentOffset(LargeLiteralFilter largeLiteralFilter, long offset) {
+        return largeLiteralFilter == null ? offset : largeLiteralFilter.toInputOffset(offset);
+    }
+
+    /**
+     * Keeps the statements and prefixes of an element till it has been 
+     * parsed completely.
+     */
+    private static class ElementBuffer implements QuadSink {
+
+        final List<Triple> triples = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<IRI> namespaces = new ArrayList<>();
+
+        @Override
+        public void add(BlankNodeOrIRI graphName, Triple triple) {
+            triples.add(triple);
+        }
+
+        @Override
+        public void addPrefix(String prefix, IRI namespace) {
+            prefixes.add(prefix);
+            namespaces.add(namespace);
+        }
+
+        //passes the prefixes and then the triples to the sink
+        void flush(TripleSink target) {
+            for (int i = 0; i < prefixes.size(); i++) {
+                target.addPrefix(prefixes.get(i), namespaces.get(i));
             }
+            for (Triple triple : triples) {
+                target.add(triple);
+            }
+            clear();
+        }
 
-        }, base);
+        void clear() {
+            triples.clear();
+            prefixes.clear();
+            namespaces.clear();
+        }
     }
 
-    static void parse(InputStream in, TripleSink sink) {
-        parse(in, sink, null);
+    /**
+     * @return the number of bytes of the UTF-8 encoded json minus its number 
+     * of UTF-16 characters
+     */
+    private static long countExtraBytes(byte[] json) {
+        long result = 0;
+        for (byte b : json) {
+            if ((b & 0xC0) == 0x80) {
+                result++;
+            } else if ((b & 0xF8) == 0xF0) {
+                result--;
+            }
+        }
+        return result;
     }
 
-    static void parse(InputStream in, TripleSink sink, final IRI base) {
-        final JsonParserFactory factory = Json.createParserFactory(null);
-        final JsonParser jsonParser = factory.createParser(in, Charset.forName("utf-8"));
-        JsonLdParser jsonLdParser = new JsonLdParser(jsonParser, sink, base);
-        jsonLdParser.parse();
+    /**
+     * Parses a context definition, as used by JsonLdWriter for compacting.
+     */
+    static Context parseContext(byte[] json) {
+        return parseContext(json, null);
+    }
+
+    /**
+     * Parses a context definition, as used to expand identifiers.
+     * 
+     * @param json the context definition, null for a context with just the 
+     * base IRI
+     * @param base the base IRI or null
+     */
+    static Context parseContext(byte[] json, IRI base) {
+        final JsonLdParser jsonLdParser = new JsonLdParser(json == null ? null
+                : createJsonParser(json), (graphName, triple) -> {
+                }, base, new ParserOptions(), null, null);
+        if (json == null) {
+            return jsonLdParser.context;
+        }
+        try {
+            return jsonLdParser.new ContextParser().parse();
+        } finally {
+            jsonLdParser.jsonParser.close();
+        }
     }
 
-    private final JsonParser jsonParser;
-    private final TripleSink sink;
+    /**
+     * Adapts a TripleSink to receive the statements of all graphs.
+     */
+    private static QuadSink toQuadSink(final TripleSink sink) {
+        return new QuadSink() {
+            @Override
+            public void add(BlankNodeOrIRI graphName, Triple triple) {
+                sink.add(triple);
+            }
+
+            @Override
+            public void addPrefix(String prefix, IRI namespace) {
+                sink.addPrefix(prefix, namespace);
+            }
+        };
+    }
+
+    private static LargeLiteralStore createLargeLiteralStore(ParserOptions options) {
+        if (options.getLargeLiteralThreshold() <= 0) {
+            return null;
+        }
+        try {
+            return new LargeLiteralStore(options.getLargeLiteralDirectory());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private JsonParser jsonParser;
+    private final QuadSink sink;
+    //the graph the statements currently parsed are in, null for the default graph
+    private BlankNodeOrIRI graphName = null;
     private final Map<String, BlankNode> label2bnodeMap = new HashMap<>();
+    private final Projection projection;
+    private final LargeLiteralStore largeLiteralStore;
+    //the filter the document is read through, to map offsets back to the original document
+    private final LargeLiteralFilter largeLiteralFilter;
+    private final int lookAheadLimit;
     private Context context = new Context();
+    //the number of statements passed to the sink
+    private long tripleCount = 0;
 
-    private JsonLdParser(JsonParser jsonParser, TripleSink sink, IRI base) {
+    private JsonLdParser(JsonParser jsonParser, QuadSink sink, IRI base, ParserOptions options,
+            LargeLiteralStore largeLiteralStore, LargeLiteralFilter largeLiteralFilter) {
         this.jsonParser = jsonParser;
         this.sink = sink;
+        this.projection = options.getProjection();
+        this.largeLiteralStore = largeLiteralStore;
+        this.largeLiteralFilter = largeLiteralFilter;
+        this.lookAheadLimit = options.getLookAheadLimit();
         context.setBaseIRI(base);
     }
 
@@ -189,11 +553,107 @@ public class JsonLdParser {
         }
     }
 
+    private void parseRootContext(byte[] json) {
+        jsonParser = createJsonParser(json);
+        try {
+            context = new ContextParser().parse();
+        } finally {
+            jsonParser.close();
+        }
+    }
+
+    /**
+     * Parses a node object passing its triples to the sink if it could be 
+     * parsed completely and to the error handler otherwise.
+     */
+    private void parseElement(byte[] json, int ordinal, long offset, long charOffset, ElementBuffer elementBuffer,
+            TripleSink target, ParseErrorHandler errorHandler) {
+        final Context rootContext = context;
+        final ParserEvents.GraphElement event = ParserEvents.AVAILABLE && ParserEvents.GraphElement.isRecording()
+                ? new ParserEvents.GraphElement() : null;
+        if (event != null) {
+            event.begin();
+        }
+        jsonParser = createJsonParser(json);
+        try {
+            final Event firstEvent = jsonParser.next();
+            if (firstEvent != Event.START_OBJECT) {
+                throw new RuntimeException("Not supported here: " + firstEvent);
+            }
+            new JsonObjectParser().parse();
+        } catch (RuntimeException ex) {
+            elementBuffer.clear();
+            errorHandler.error(offset, ordinal, ex);
+            return;
+        } finally {
+            context = rootContext;
+            jsonParser.close();
+            if (event != null) {
+                event.charOffset = charOffset;
+                event.triples = elementBuffer.triples.size();
+                event.commit();
+            }
+        }
+        elementBuffer.flush(target);
+    }
+
+    /**
+     * @param charOffset an offset in the document as read by the parser, -1 
+     * if unknown
+     * @return the offset in the document before replacing large literals
+     */
+    private long toDocumentCharOffset(long charOffset) {
+        if (charOffset < 0 || largeLiteralFilter == null) {
+            return charOffset;
+        }
+        return largeLiteralFilter.toInputCharOffset(charOffset);
+    }
+
+    private static JsonParser createJsonParser(byte[] json) {
+        return new IndexedJsonParser(json);
+    }
+
     private void parseJsonObject() {
         JsonObjectParser subjectParser = new JsonObjectParser(true);
         subjectParser.parse();
     }
 
+    private void emit(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        tripleCount++;
+        final Triple triple = new TripleImpl(subject, predicate, object);
+        if (ParserEvents.AVAILABLE && ParserEvents.SinkAdd.isRecording()) {
+            final ParserEvents.SinkAdd event = new ParserEvents.SinkAdd();
+            event.begin();
+            sink.add(graphName, triple);
+            event.end();
+            if (event.shouldCommit()) {
+                event.sink = sink.getClass();
+                event.commit();
+            }
+            return;
+        }
+        sink.add(graphName, triple);
+    }
+
+    /**
+     * Creates a literal, either a language or datatype or neither is given.
+     */
+    private Literal createLiteral(String value, Language language, IRI dataType) {
+        if (largeLiteralStore != null) {
+            final LargeLiteral largeLiteral = largeLiteralStore.getLiteral(value, language, dataType);
+            if (largeLiteral != null) {
+                return largeLiteral;
+            }
+        }
+        if (language != null) {
+            return new PlainLiteralImpl(value, language);
+        }
+        if (dataType != null) {
+            return new TypedLiteralImpl(value, dataType);
+        }
+        return new PlainLiteralImpl(value);
+    }
+
     private BlankNode getBlankNode(String identifier) {
         BlankNode result = label2bnodeMap.get(identifier);
         if (result == null) {
@@ -219,6 +679,31 @@ public class JsonLdParser {
         }
     }
 
+    private boolean isTypeWanted(BlankNodeOrIRI type) {
+        return projection == null || projection.isTypeWanted(type);
+    }
+
+    /**
+     * Consumes the value starting with the next event, without looking at it
+     */
+    private void skipValue() {
+        int depth = 0;
+        do {
+            switch (jsonParser.next()) {
+                case START_OBJECT:
+                case START_ARRAY: {
+                    depth++;
+                    break;
+                }
+                case END_OBJECT:
+                case END_ARRAY: {
+                    depth--;
+                    break;
+                }
+            }
+        } while (depth > 0);
+    }
+
     /**
      * Parses JSon Objects
      */
@@ -228,6 +713,8 @@ public class JsonLdParser {
         private String value = null;
         private Language language = null;
         private RDFTerm node;
+        //whether node has been set by an @id key
+        private boolean hasId = false;
         Context origContext = null;
         private final boolean isRoot;
 
@@ -240,6 +727,20 @@ public class JsonLdParser {
         }
 
         public void parse() {
+            final JsonParser outerParser = jsonParser;
+            try {
+                parseMembers();
+            } finally {
+                //the events replayed after a look-ahead are within this object
+                jsonParser = outerParser;
+                //as well as its local context
+                if (origContext != null) {
+                    context = origContext;
+                }
+            }
+        }
+
+        private void parseMembers() {
             JsonParser.Event first = jsonParser.next();
             if (!first.equals(JsonParser.Event.KEY_NAME)) {
                 throw new RuntimeException("Sorry");
@@ -248,6 +749,7 @@ public class JsonLdParser {
             while (firstKey.equals("@id") || firstKey.equals("@context")) {
                 if (firstKey.equals("@id")) {
                     node = parseId();
+                    hasId = true;
                     if (jsonParser.next().equals(JsonParser.Event.END_OBJECT)) {
                         return;
                     }
@@ -262,6 +764,9 @@ public class JsonLdParser {
                 }
                 firstKey = jsonParser.getString();
             }
+            if (lookAheadLimit > 0 && mayHaveLaterId(firstKey)) {
+                lookAhead();
+            }
             handleKey();
             while (jsonParser.hasNext()) {
                 final Event next = jsonParser.next();
@@ -275,18 +780,11 @@ public class JsonLdParser {
                             if (node != null) {
                                 throw new RuntimeException("@value combined with incompatible key");
                             }
-                            if (language != null) {
-                                node = new PlainLiteralImpl(value, language);
-                            } else {
-                                node = new TypedLiteralImpl(value, (IRI) ambiguousTypeIRI);
-                            }
-                            if (origContext != null) {
-                                context = origContext;
-                            }
+                            node = createLiteral(value, language, (IRI) ambiguousTypeIRI);
                             return;
                         }
-                        if (ambiguousTypeIRI != null) {
-                            sink.add(new TripleImpl(getSubject(), RDF.type, ambiguousTypeIRI));
+                        if (ambiguousTypeIRI != null && isTypeWanted(ambiguousTypeIRI)) {
+                            emit(getSubject(), RDF.type, ambiguousTypeIRI);
                         }
                         return;
                     }
@@ -298,6 +796,75 @@ public class JsonLdParser {
             }
         }
 
+        /**
+         * Value and list objects have neither @id nor @context, there's no 
+         * need to look ahead for them.
+         */
+        private boolean mayHaveLaterId(String firstKey) {
+            switch (firstKey) {
+                case "@value":
+                case "@language":
+                case "@list":
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * Reads ahead up to the look-ahead limit of events for @id and 
+         * @context keys after the current key. These are processed directly
+         * while the other events are replayed afterwards.
+         */
+        private void lookAhead() {
+            final ReplayingJsonParser replay = new ReplayingJsonParser(jsonParser);
+            replay.add(Event.KEY_NAME, jsonParser.getString());
+            int depth = 0;
+            while (depth >= 0 && replay.size() < lookAheadLimit && jsonParser.hasNext()) {
+                final Event next = jsonParser.next();
+                switch (next) {
+                    case KEY_NAME: {
+                        final String keyName = jsonParser.getString();
+                        if (depth == 0 && keyName.equals("@id") && node == null) {
+                            node = parseId();
+                            hasId = true;
+                            continue;
+                        }
+                        if (depth == 0 && keyName.equals("@context") && origContext == null) {
+                            origContext = context;
+                            context = new ContextParser().parse();
+                            continue;
+                        }
+                        replay.add(next, keyName);
+                        break;
+                    }
+                    case VALUE_STRING:
+                    case VALUE_NUMBER: {
+                        replay.add(next, jsonParser.getString());
+                        break;
+                    }
+                    case START_OBJECT:
+                    case START_ARRAY: {
+                        depth++;
+                        replay.add(next, null);
+                        break;
+                    }
+                    case END_OBJECT:
+                    case END_ARRAY: {
+                        depth--;
+                        replay.add(next, null);
+                        break;
+                    }
+                    default: {
+                        replay.add(next, null);
+                    }
+                }
+            }
+            jsonParser = replay;
+            //positions the parser again on the current key
+            jsonParser.next();
+        }
+
         //called when the resource represented by this node is used as subject
         private BlankNodeOrIRI getSubject() {
             if (node == null) {
@@ -318,6 +885,10 @@ public class JsonLdParser {
 
         private void handleKey() {
             final String keyName = jsonParser.getString();
+            if (keyName.equals("@id") || keyName.equals("@context")) {
+                throw new RuntimeException(keyName + " after other keys of an object is only supported within the "
+                        + "look-ahead limit, which is " + lookAheadLimit + " events");
+            }
             if (keyName.equals("@type")) {
                 //either datatype or rdf type
                 //@type value must a string, an array of strings (, or an empty object?)
@@ -342,7 +913,9 @@ public class JsonLdParser {
                     ambiguousTypeIRI = types[0];
                 } else {
                     for (BlankNodeOrIRI type : types) {
-                        sink.add(new TripleImpl(getSubject(), RDF.type, type));
+                        if (isTypeWanted(type)) {
+                            emit(getSubject(), RDF.type, type);
+                        }
                     }
                 }
                 return;
@@ -384,6 +957,10 @@ public class JsonLdParser {
                 parseList();
                 return;
             }
+            if (projection != null && !context.isWanted(keyName)) {
+                skipValue();
+                return;
+            }
             final KeyResolution keyResolution = parseKeyOrType(keyName);
             final BlankNodeOrIRI property = keyResolution.keyValue;
             if (!(property instanceof IRI)) {
@@ -395,7 +972,7 @@ public class JsonLdParser {
         }
 
         private IRI[] readTypes() {
-            final List<IRI> types = new VirtualFlow.ArrayLinkedList<>();
+            final List<IRI> types = new ArrayList<>();
             while (jsonParser.hasNext()) {
                 final Event next = jsonParser.next();
                 switch (next) {
@@ -426,42 +1003,67 @@ public class JsonLdParser {
             }
         }
 
+        //iterates rather than recursing over the elements so that the length of lists is not limited by the stack
         private BlankNodeOrIRI parseListRest() {
-            final Event nextEvent = jsonParser.next();
-            switch (nextEvent) {
-                case END_ARRAY: {
-                    return new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#nil");
-                }
-                default: {
-                    BlankNode listNode = new BlankNode();
-                    final ObjectParser subjectPredicateParser = new ObjectParser(listNode,
-                            new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#first"),
-                            new DefaultValueParser());
-                    subjectPredicateParser.parse(nextEvent);
-                    sink.add(new TripleImpl(listNode,
-                            new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#rest"), parseListRest()));
-                    return listNode;
+            final IRI nil = new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#nil");
+            final IRI first = new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#first");
+            final IRI rest = new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#rest");
+            BlankNodeOrIRI head = null;
+            BlankNode previousNode = null;
+            Event nextEvent = jsonParser.next();
+            while (nextEvent != Event.END_ARRAY) {
+                final BlankNode listNode = new BlankNode();
+                if (previousNode == null) {
+                    head = listNode;
+                } else {
+                    emit(previousNode, rest, listNode);
                 }
+                final ObjectParser subjectPredicateParser = new ObjectParser(listNode, first,
+                        new DefaultValueParser());
+                subjectPredicateParser.parse(nextEvent);
+                previousNode = listNode;
+                nextEvent = jsonParser.next();
+            }
+            if (previousNode == null) {
+                return nil;
             }
+            emit(previousNode, rest, nil);
+            return head;
         }
 
         private void parseGraph() {
-            if (!isRoot) {
-                throw new RuntimeException("Currently @graph is only supported in the root object");
+            final BlankNodeOrIRI outerGraphName = graphName;
+            if (!isRoot || hasId) {
+                graphName = getSubject();
             }
-            final Event nextEvent = jsonParser.next();
-            switch (nextEvent) {
-                case START_ARRAY: {
-                    parseArray();
-                    break;
-                }
-                case START_OBJECT: {
-                    throw new RuntimeException("node object as value of @graph not supported yet.");
+            try {
+                final Event nextEvent = jsonParser.next();
+                switch (nextEvent) {
+                    case START_ARRAY: {
+                        parseArray();
+                        break;
+                    }
+                    case START_OBJECT: {
+                        new JsonObjectParser().parse();
+                        break;
+                    }
+                    default:
+                        throw new RuntimeException("Expected start of array, got: " + nextEvent);
                 }
-                default:
-                    throw new RuntimeException("Expected start of array, got: " + nextEvent);
+            } finally {
+                graphName = outerGraphName;
             }
+        }
 
+        private void parseRecordedElement() {
+            final ParserEvents.GraphElement event = new ParserEvents.GraphElement();
+            //the location is after the opening brace
+            event.charOffset = toDocumentCharOffset(Math.max(-1, jsonParser.getLocation().getStreamOffset() - 1));
+            final long triplesBefore = tripleCount;
+            event.begin();
+            new JsonObjectParser().parse();
+            event.triples = tripleCount - triplesBefore;
+            event.commit();
         }
 
         private void parseArray() {
@@ -469,6 +1071,10 @@ public class JsonLdParser {
                 final Event next = jsonParser.next();
                 switch (next) {
                     case START_OBJECT: {
+                        if (isRoot && ParserEvents.AVAILABLE && ParserEvents.GraphElement.isRecording()) {
+                            parseRecordedElement();
+                            break;
+                        }
                         final JsonObjectParser subjectParser = new JsonObjectParser();
                         subjectParser.parse();
                         break;
@@ -516,7 +1122,7 @@ public class JsonLdParser {
                     break;
                 }
                 case VALUE_STRING: {
-                    sink.add(new TripleImpl(subject, predicate, valueParser.parseValue()));
+                    emit(subject, predicate, valueParser.parseValue());
                     break;
                 }
                 default: {
@@ -528,7 +1134,7 @@ public class JsonLdParser {
         private void parseSingleObject() {
             final JsonObjectParser subjectParser = new JsonObjectParser();
             subjectParser.parse();
-            sink.add(new TripleImpl(subject, predicate, subjectParser.node));
+            emit(subject, predicate, subjectParser.node);
         }
 
         private void parseArray() {
@@ -540,7 +1146,7 @@ public class JsonLdParser {
                         break;
                     }
                     case VALUE_STRING: {
-                        sink.add(new TripleImpl(subject, predicate, new PlainLiteralImpl(jsonParser.getString())));
+                        emit(subject, predicate, valueParser.parseValue());
                         break;
                     }
                     case END_ARRAY: {
@@ -561,6 +1167,18 @@ public class JsonLdParser {
         }
 
         Context parse() {
+            if (!ParserEvents.AVAILABLE || !ParserEvents.ContextParse.isRecording()) {
+                return parseDefinition();
+            }
+            final ParserEvents.ContextParse event = new ParserEvents.ContextParse();
+            event.begin();
+            final Context result = parseDefinition();
+            event.terms = result.termMap.size();
+            event.commit();
+            return result;
+        }
+
+        private Context parseDefinition() {
             final Context result = new Context(context);
             JsonParser.Event firstKey = jsonParser.next();
             /*its value MUST be null, an absolute IRI, a relative IRI, a context 
@@ -591,15 +1209,25 @@ public class JsonLdParser {
             throw new RuntimeException("Unexpected end of JSON data");
         }
 
+        private BlankNodeOrIRI resolve(Context target, String identifier) {
+            if (identifier.startsWith("_:")) {
+                return getBlankNode(identifier);
+            }
+            return target.resolveKeyOrType(identifier).keyValue;
+        }
+
         private void handleKey(Context target) {
             final String term = jsonParser.getString();
             JsonParser.Event valueEvent = jsonParser.next();
             switch (valueEvent) {
                 case VALUE_STRING: {
                     //TODO handle null
-                    //TODO apparently terms can be defined using terms from the same context as long as its not circular
-                    BlankNodeOrIRI value = parseKeyOrType(jsonParser.getString()).keyValue;
+                    //terms defined before in the same context are considered, circular definitions are not supported
+                    BlankNodeOrIRI value = resolve(target, jsonParser.getString());
                     target.register(term, new KeyResolution(value));
+                    if (value instanceof IRI) {
+                        sink.addPrefix(term, (IRI) value);
+                    }
                     break;
                 }
                 case START_OBJECT: {
@@ -614,27 +1242,15 @@ public class JsonLdParser {
                                     jsonParser.next();
                                     final String typeValue = jsonParser.getString();
                                     if (typeValue.equals("@id")) {
-                                        valueParser = new ValueParser() {
-                                            @Override
-                                            public RDFTerm parseValue() {
-                                                return new IRI(jsonParser.getString());
-                                            }
-                                        };
-                                    } else {                                        
-                                        valueParser = new ValueParser() {
-                                            @Override
-                                            public RDFTerm parseValue() {
-                                                //this is not precomputed in the closure as to consider prefix in the same context
-                                                final IRI typeIri = (IRI) parseKeyOrType(typeValue).keyValue;
-                                                return new TypedLiteralImpl(jsonParser.getString(), typeIri);
-                                            }
-                                        };
+                                        valueParser = new IdValueParser();
+                                    } else {
+                                        valueParser = new TypedValueParser(typeValue);
                                     }
                                     break;
                                 }
                                 if (keyName.equals("@id")) {
                                     jsonParser.next();
-                                    id = parseKeyOrType(jsonParser.getString()).keyValue;
+                                    id = resolve(target, jsonParser.getString());
                                     break;
                                 }
                             }
@@ -667,7 +1283,38 @@ public class JsonLdParser {
     class DefaultValueParser implements ValueParser {
         @Override
         public RDFTerm parseValue() {
-            return new PlainLiteralImpl(jsonParser.getString());
+            return createLiteral(jsonParser.getString(), null, null);
+        }
+    }
+
+    /**
+     * Parses the values of terms with type @id
+     */
+    class IdValueParser implements ValueParser {
+        @Override
+        public RDFTerm parseValue() {
+            final String value = jsonParser.getString();
+            //long values are replaced by a placeholder as the filter doesn't know the term definitions
+            return new IRI(largeLiteralStore == null ? value : largeLiteralStore.resolve(value));
+        }
+    }
+
+    /**
+     * Parses the values of terms with a datatype
+     */
+    class TypedValueParser implements ValueParser {
+
+        final String typeValue;
+
+        TypedValueParser(String typeValue) {
+            this.typeValue = typeValue;
+        }
+
+        @Override
+        public RDFTerm parseValue() {
+            //this is not precomputed as to consider prefix in the same context
+            final IRI typeIri = (IRI) parseKeyOrType(typeValue).keyValue;
+            return createLiteral(jsonParser.getString(), null, typeIri);
         }
     }
     
@@ -687,11 +1334,20 @@ public class JsonLdParser {
         
     }
 
+    private static final int MAX_CACHED_KEYS = 4096;
+
     class Context {
 
         private final Map<String, KeyResolution> termMap = new HashMap<>();
         private final Context parent;
         private URL baseURL;
+        //caches the projection decision for keys, keys are typically few
+        private final Map<String, Boolean> wantedKeys = new HashMap<>();
+        //the reverse mappings for compacting IRIs, created on first use
+        private Map<String, String> iri2term = null;
+        private Map<String, String> iri2idTerm = null;
+        private Map<String, Map<String, String>> iri2typedTerms = null;
+        private List<String[]> namespaces = null;
 
         public Context() {
             parent = null;
@@ -718,6 +1374,26 @@ public class JsonLdParser {
             }
         }
 
+        /**
+         * Checks if the values of a key are wanted according to the projection
+         */
+        boolean isWanted(String key) {
+            Boolean wanted = wantedKeys.get(key);
+            if (wanted == null) {
+                if (key.startsWith("_:")) {
+                    //let the usual processing complain about it
+                    wanted = true;
+                } else {
+                    final BlankNodeOrIRI property = resolveKeyOrType(key).keyValue;
+                    wanted = !(property instanceof IRI) || projection.isPredicateWanted((IRI) property);
+                }
+                if (wantedKeys.size() < MAX_CACHED_KEYS) {
+                    wantedKeys.put(key, wanted);
+                }
+            }
+            return wanted;
+        }
+
         BlankNodeOrIRI resolveRelativeUriOrCurie(String key) {
             final int colonPos = key.indexOf(':');
             if (colonPos > -1) {
@@ -770,6 +1446,104 @@ public class JsonLdParser {
             }
         }
 
+        /**
+         * Compacts an IRI used as key with its values written in expanded 
+         * form, either to a term or as compact IRI.
+         */
+        String compactKey(IRI iri) {
+            createReverseMappings();
+            final String term = iri2term.get(iri.getUnicodeString());
+            return term != null ? term : compactIri(iri);
+        }
+
+        /**
+         * @return the term for the IRI with type @id, or null if there is none
+         */
+        String getIdTerm(IRI iri) {
+            createReverseMappings();
+            return iri2idTerm.get(iri.getUnicodeString());
+        }
+
+        /**
+         * @return the term for the IRI with the datatype, or null if there is
+         * none
+         */
+        String getTypedTerm(IRI iri, IRI dataType) {
+            createReverseMappings();
+            final Map<String, String> dataType2term = iri2typedTerms.get(iri.getUnicodeString());
+            return dataType2term == null ? null : dataType2term.get(dataType.getUnicodeString());
+        }
+
+        /**
+         * Compacts an IRI used as value of @id or @type, using the longest 
+         * namespace defined by a term.
+         */
+        String compactIri(IRI iri) {
+            createReverseMappings();
+            final String value = iri.getUnicodeString();
+            for (String[] namespace : namespaces) {
+                if (value.startsWith(namespace[0]) && !value.startsWith("//", namespace[0].length())) {
+                    return namespace[1] + ':' + value.substring(namespace[0].length());
+                }
+            }
+            return value;
+        }
+
+        private void collectTerms(Map<String, KeyResolution> target) {
+            if (parent != null) {
+                parent.collectTerms(target);
+            }
+            target.putAll(termMap);
+        }
+
+        private void createReverseMappings() {
+            if (namespaces != null) {
+                return;
+            }
+            final Map<String, KeyResolution> terms = new HashMap<>();
+            collectTerms(terms);
+            iri2term = new HashMap<>();
+            iri2idTerm = new HashMap<>();
+            iri2typedTerms = new HashMap<>();
+            namespaces = new ArrayList<>();
+            for (Map.Entry<String, KeyResolution> entry : terms.entrySet()) {
+                final String term = entry.getKey();
+                final KeyResolution resolution = entry.getValue();
+                if (term.startsWith("@") || !(resolution.keyValue instanceof IRI)) {
+                    continue;
+                }
+                final String iri = ((IRI) resolution.keyValue).getUnicodeString();
+                if (resolution.valueParser instanceof IdValueParser) {
+                    putShortest(iri2idTerm, iri, term);
+                } else if (resolution.valueParser instanceof TypedValueParser) {
+                    final BlankNodeOrIRI dataType = resolveKeyOrType(((TypedValueParser) resolution.valueParser).typeValue).keyValue;
+                    Map<String, String> dataType2term = iri2typedTerms.get(iri);
+                    if (dataType2term == null) {
+                        dataType2term = new HashMap<>();
+                        iri2typedTerms.put(iri, dataType2term);
+                    }
+                    putShortest(dataType2term, ((IRI) dataType).getUnicodeString(), term);
+                } else {
+                    putShortest(iri2term, iri, term);
+                }
+                if (term.indexOf(':') == -1) {
+                    namespaces.add(new String[]{iri, term});
+                }
+            }
+            //longest namespace first, then shortest term
+            namespaces.sort((String[] a, String[] b) -> a[0].length() != b[0].length()
+                    ? b[0].length() - a[0].length() : a[1].length() != b[1].length()
+                    ? a[1].length() - b[1].length() : a[1].compareTo(b[1]));
+        }
+
+        private void putShortest(Map<String, String> map, String key, String term) {
+            final String existing = map.get(key);
+            if (existing == null || term.length() < existing.length()
+                    || (term.length() == existing.length() && term.compareTo(existing) < 0)) {
+                map.put(key, term);
+            }
+        }
+
         private void register(String term, KeyResolution value) {
             termMap.put(term, value);
         }
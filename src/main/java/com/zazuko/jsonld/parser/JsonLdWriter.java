@@ -0,0 +1,246 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Literal;
+import org.apache.clerezza.commons.rdf.RDFTerm;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.rdf.ontologies.RDF;
+import org.apache.clerezza.rdf.ontologies.XSD;
+
+/**
+ * A TripleSink writing JSON-LD, compacted with a given context.
+ * 
+ * The output is a @graph with a node object for every run of triples with the
+ * same subject, so triples should be passed grouped by subject. Only the 
+ * triples of the current subject are kept in memory. Literals are written as
+ * strings and nodes are not embedded, lists are written as rdf:first and 
+ * rdf:rest properties.
+ *
+ * @author user
+ */
+public class JsonLdWriter implements TripleSink, Closeable {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final JsonGenerator generator;
+    private final JsonLdParser.Context context;
+    private final NTriples.BlankNodeLabels labels = new NTriples.BlankNodeLabels();
+    private BlankNodeOrIRI currentSubject = null;
+    private final List<Triple> currentTriples = new ArrayList<>();
+
+    /**
+     * @param out the stream the UTF-8 encoded document is written to
+     * @param context the context for compacting, or null to write full IRIs
+     */
+    public JsonLdWriter(OutputStream out, JsonObject context) {
+        this(new BufferedWriter(new OutputStreamWriter(out, UTF8)), context);
+    }
+
+    /**
+     * @param out the writer the document is written to
+     * @param context the context for compacting, or null to write full IRIs
+     */
+    public JsonLdWriter(Writer out, JsonObject context) {
+        final JsonObject contextDefinition = context != null ? context : Json.createObjectBuilder().build();
+        final ByteArrayOutputStream contextBytes = new ByteArrayOutputStream();
+        try (JsonWriter contextWriter = Json.createWriter(contextBytes)) {
+            contextWriter.writeObject(contextDefinition);
+        }
+        this.context = JsonLdParser.parseContext(contextBytes.toByteArray());
+        generator = Json.createGenerator(out);
+        generator.writeStartObject();
+        if (context != null) {
+            generator.write("@context", context);
+        }
+        generator.writeStartArray("@graph");
+    }
+
+    @Override
+    public void add(Triple triple) {
+        if (!triple.getSubject().equals(currentSubject)) {
+            writeNode();
+            currentSubject = triple.getSubject();
+        }
+        currentTriples.add(triple);
+    }
+
+    /**
+     * Writes the last node and closes the document and the underlying writer.
+     */
+    @Override
+    public void close() {
+        writeNode();
+        generator.writeEnd();
+        generator.writeEnd();
+        generator.close();
+    }
+
+    private void writeNode() {
+        if (currentSubject == null) {
+            return;
+        }
+        generator.writeStartObject();
+        generator.write("@id", toId(currentSubject));
+        final List<IRI> types = new ArrayList<>();
+        final Map<String, List<Triple>> key2Triples = new LinkedHashMap<>();
+        for (Triple triple : currentTriples) {
+            if (triple.getPredicate().equals(RDF.type) && triple.getObject() instanceof IRI) {
+                types.add((IRI) triple.getObject());
+                continue;
+            }
+            final String key = getKey(triple.getPredicate(), triple.getObject());
+            List<Triple> triples = key2Triples.get(key);
+            if (triples == null) {
+                triples = new ArrayList<>();
+                key2Triples.put(key, triples);
+            }
+            triples.add(triple);
+        }
+        if (types.size() == 1) {
+            generator.write("@type", context.compactIri(types.get(0)));
+        } else if (types.size() > 1) {
+            //the elements of a @type array are not compacted as the parser doesn't expand them
+            generator.writeStartArray("@type");
+            for (IRI type : types) {
+                generator.write(type.getUnicodeString());
+            }
+            generator.writeEnd();
+        }
+        for (Map.Entry<String, List<Triple>> entry : key2Triples.entrySet()) {
+            final List<Triple> triples = entry.getValue();
+            if (triples.size() == 1) {
+                writeValue(entry.getKey(), triples.get(0), entry.getKey());
+            } else {
+                generator.writeStartArray(entry.getKey());
+                for (Triple triple : triples) {
+                    writeValue(entry.getKey(), triple, null);
+                }
+                generator.writeEnd();
+            }
+        }
+        generator.writeEnd();
+        currentSubject = null;
+        currentTriples.clear();
+    }
+
+    /**
+     * A term coercing the value is used if there is one, otherwise the 
+     * value is written in expanded form.
+     */
+    private String getKey(IRI predicate, RDFTerm object) {
+        final String coercingTerm = getCoercingTerm(predicate, object);
+        return coercingTerm != null ? coercingTerm : context.compactKey(predicate);
+    }
+
+    private String getCoercingTerm(IRI predicate, RDFTerm object) {
+        if (object instanceof IRI) {
+            return context.getIdTerm(predicate);
+        }
+        if (object instanceof Literal) {
+            final Literal literal = (Literal) object;
+            if (literal.getLanguage() == null && !literal.getDataType().equals(XSD.string)) {
+                return context.getTypedTerm(predicate, literal.getDataType());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name the name of the value in the enclosing object, null for 
+     * values in arrays
+     */
+    private void writeValue(String key, Triple triple, String name) {
+        final RDFTerm object = triple.getObject();
+        if (key.equals(getCoercingTerm(triple.getPredicate(), object))) {
+            if (object instanceof IRI) {
+                writeString(name, ((IRI) object).getUnicodeString());
+            } else {
+                writeString(name, ((Literal) object).getLexicalForm());
+            }
+            return;
+        }
+        if (object instanceof Literal) {
+            final Literal literal = (Literal) object;
+            if (literal.getLanguage() != null) {
+                writeStartObject(name);
+                generator.write("@value", literal.getLexicalForm());
+                generator.write("@language", literal.getLanguage().toString());
+                generator.writeEnd();
+            } else if (literal.getDataType().equals(XSD.string)) {
+                writeString(name, literal.getLexicalForm());
+            } else {
+                writeStartObject(name);
+                generator.write("@value", literal.getLexicalForm());
+                generator.write("@type", context.compactIri(literal.getDataType()));
+                generator.writeEnd();
+            }
+        } else {
+            writeStartObject(name);
+            generator.write("@id", toId((BlankNodeOrIRI) object));
+            generator.writeEnd();
+        }
+    }
+
+    private void writeString(String name, String value) {
+        if (name != null) {
+            generator.write(name, value);
+        } else {
+            generator.write(value);
+        }
+    }
+
+    private void writeStartObject(String name) {
+        if (name != null) {
+            generator.writeStartObject(name);
+        } else {
+            generator.writeStartObject();
+        }
+    }
+
+    private String toId(BlankNodeOrIRI node) {
+        if (node instanceof IRI) {
+            return context.compactIri((IRI) node);
+        }
+        return labels.get((BlankNode) node);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Language;
+import org.apache.clerezza.commons.rdf.Literal;
+import org.apache.clerezza.commons.rdf.impl.utils.AbstractLiteral;
+import org.apache.clerezza.rdf.ontologies.XSD;
+
+/**
+ * A literal with a lexical form too large to be kept in memory.
+ * 
+ * The lexical form should be read with {@link #openReader()}, calling 
+ * {@link #getLexicalForm()} loads it into memory. The content is only 
+ * available till the parse producing the literal returns.
+ * 
+ * The hash code and a digest of the lexical form are computed by the store 
+ * while the content is written, so that equals and hashCode keep working 
+ * after the parse, for instance in a graph the literals were added to. Only another 
+ * Literal implementation comparing itself with a LargeLiteral reads the 
+ * lexical form.
+ *
+ * @author user
+ */
+public class LargeLiteral extends AbstractLiteral {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final IRI RDF_LANG_STRING = new IRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#langString");
+
+    private final LargeLiteralStore store;
+    private final long offset;
+    private final long length;
+    private final Language language;
+    private final IRI dataType;
+    private final int lexicalFormHash;
+    private final long lexicalFormLength;
+    private final byte[] lexicalFormDigest;
+
+    /**
+     * @param lexicalFormHash the hash code of the lexical form as String
+     * @param lexicalFormLength the length in UTF-16 characters
+     * @param lexicalFormDigest the digest of the characters, high byte first
+     */
+    LargeLiteral(LargeLiteralStore store, long offset, long length, int lexicalFormHash, long lexicalFormLength,
+            byte[] lexicalFormDigest, Language language, IRI dataType) {
+        this.store = store;
+        this.offset = offset;
+        this.length = length;
+        this.lexicalFormHash = lexicalFormHash;
+        this.lexicalFormLength = lexicalFormLength;
+        this.lexicalFormDigest = lexicalFormDigest;
+        this.language = language;
+        if (dataType != null) {
+            this.dataType = dataType;
+        } else {
+            this.dataType = language == null ? XSD.string : RDF_LANG_STRING;
+        }
+    }
+
+    private static void update(MessageDigest messageDigest, char[] chars, int length) {
+        for (int i = 0; i < length; i++) {
+            messageDigest.update((byte) (chars[i] >> 8));
+            messageDigest.update((byte) chars[i]);
+        }
+    }
+
+    /**
+     * @return a reader for the lexical form
+     */
+    public Reader openReader() {
+        return new JsonStringReader(new InputStreamReader(store.openStream(offset, length), UTF8));
+    }
+
+    @Override
+    public String getLexicalForm() {
+        final StringBuilder result = new StringBuilder();
+        final char[] buffer = new char[8192];
+        try (Reader reader = openReader()) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                result.append(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        //as AbstractLiteral, without reading the lexical form
+        return (language == null ? 0 : language.hashCode()) + lexicalFormHash + dataType.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Literal)) {
+            return false;
+        }
+        final Literal other = (Literal) obj;
+        if ((language == null ? other.getLanguage() != null : !language.equals(other.getLanguage()))
+                || !dataType.equals(other.getDataType())) {
+            return false;
+        }
+        if (other instanceof LargeLiteral) {
+            final LargeLiteral large = (LargeLiteral) other;
+            return lexicalFormHash == large.lexicalFormHash && lexicalFormLength == large.lexicalFormLength
+                    && Arrays.equals(lexicalFormDigest, large.lexicalFormDigest);
+        }
+        final String lexicalForm = other.getLexicalForm();
+        if (lexicalForm.length() != lexicalFormLength || lexicalForm.hashCode() != lexicalFormHash) {
+            return false;
+        }
+        final MessageDigest messageDigest = GraphIndex.createMessageDigest();
+        final char[] chars = lexicalForm.toCharArray();
+        update(messageDigest, chars, chars.length);
+        return Arrays.equals(lexicalFormDigest, messageDigest.digest());
+    }
+
+    @Override
+    public IRI getDataType() {
+        return dataType;
+    }
+
+    @Override
+    public Language getLanguage() {
+        return language;
+    }
+
+    /**
+     * Resolves the escape sequences of the content of a JSON string.
+     */
+    private static class JsonStringReader extends Reader {
+
+        private final Reader in;
+
+        JsonStringReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int count = 0;
+            while (count < len) {
+                final int c = in.read();
+                if (c == -1) {
+                    return count == 0 ? -1 : count;
+                }
+                cbuf[off + count++] = c == '\\' ? readEscape() : (char) c;
+            }
+            return count;
+        }
+
+        private char readEscape() throws IOException {
+            final int c = in.read();
+            switch (c) {
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u': {
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(in.read(), 16);
+                        if (digit == -1) {
+                            throw new IOException("Invalid unicode escape");
+                        }
+                        value = (value << 4) + digit;
+                    }
+                    return (char) value;
+                }
+                case -1:
+                    throw new IOException("Unterminated escape sequence");
+                default:
+                    return (char) c;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
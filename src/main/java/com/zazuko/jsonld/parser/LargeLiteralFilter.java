@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Passes through a UTF-8 encoded JSON document replacing string values 
+ * longer than a threshold with a placeholder, the content of such a value 
+ * is written to a {@link LargeLiteralStore}.
+ * 
+ * Object keys are never replaced, nor are the values of keywords other than 
+ * @value or anything within a @context, as these are used as IRIs, 
+ * language tags or term definitions. Values of terms coerced to @id may 
+ * still be replaced, the parser resolves the placeholder for them.
+ * 
+ * Offsets in the filtered document, in bytes or in UTF-16 characters, can 
+ * be mapped to offsets in the original one.
+ *
+ * @author user
+ */
+class LargeLiteralFilter extends InputStream {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final InputStream in;
+    private final LargeLiteralStore store;
+    private final int threshold;
+    private final byte[] inBuffer = new byte[65536];
+    private byte[] outBuffer = new byte[65536];
+    private int outPosition = 0;
+    private int outLimit = 0;
+    //true for objects, false for arrays
+    private boolean[] containers = new boolean[32];
+    //whether string values directly in the container may be replaced
+    private boolean[] replaceable = new boolean[32];
+    //whether the container is within a @context
+    private boolean[] inContext = new boolean[32];
+    //whether the value of the current member of an object is a @context
+    private boolean[] contextMember = new boolean[32];
+    private int depth = 0;
+    private boolean expectKey = false;
+    private boolean inString = false;
+    private boolean inKey = false;
+    //true for keys and for values which are not replaced
+    private boolean passThrough = false;
+    //the start of the last key, enough to recognize keywords
+    private final byte[] key = new byte[16];
+    private int keyLength = 0;
+    private boolean escaped = false;
+    private final byte[] stringBuffer;
+    private int stringLength = 0;
+    private boolean spilling = false;
+    private boolean eof = false;
+    //bytes and characters read from in and bytes passed on before the current buffers
+    private long inputBytes = 0;
+    private long inputChars = 0;
+    private long outputBytes = 0;
+    //the characters read from in till the start of the current string
+    private long stringStartChars;
+    //the end in the output of each replacement and the differences to the input after it
+    private long[] replacementEnds = new long[16];
+    private long[] byteDeltas = new long[16];
+    private long[] replacementCharEnds = new long[16];
+    private long[] charDeltas = new long[16];
+    private int replacements = 0;
+
+    /**
+     * @param threshold the length in bytes of the encoded value above which it
+     * is written to the store
+     */
+    LargeLiteralFilter(InputStream in, LargeLiteralStore store, int threshold) {
+        this.in = in;
+        this.store = store;
+        this.threshold = threshold;
+        this.stringBuffer = new byte[threshold];
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outPosition == outLimit) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        final int count = Math.min(len, outLimit - outPosition);
+        System.arraycopy(outBuffer, outPosition, b, off, count);
+        outPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @param offset a byte offset in the filtered document, not within a
+     * replaced value
+     * @return the byte offset in the original document
+     */
+    long toInputOffset(long offset) {
+        final int replacement = lastReplacementBefore(replacementEnds, offset);
+        return replacement == -1 ? offset : offset + byteDeltas[replacement];
+    }
+
+    /**
+     * @param charOffset an offset in UTF-16 characters in the filtered 
+     * document, not within a replaced value
+     * @return the offset in characters in the original document
+     */
+    long toInputCharOffset(long charOffset) {
+        final int replacement = lastReplacementBefore(replacementCharEnds, charOffset);
+        return replacement == -1 ? charOffset : charOffset + charDeltas[replacement];
+    }
+
+    private int lastReplacementBefore(long[] ends, long offset) {
+        int low = 0;
+        int high = replacements;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (ends[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private void fill() throws IOException {
+        outputBytes += outLimit;
+        outPosition = 0;
+        outLimit = 0;
+        final int read = in.read(inBuffer);
+        if (read == -1) {
+            eof = true;
+            return;
+        }
+        for (int i = 0; i < read; i++) {
+            final byte c = inBuffer[i];
+            //continuation bytes start no character, four byte sequences are two UTF-16 characters
+            if ((c & 0xC0) != 0x80) {
+                inputChars += (c & 0xF8) == 0xF0 ? 2 : 1;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    endString(inputBytes + i + 1);
+                    continue;
+                }
+                if (passThrough) {
+                    if (inKey) {
+                        if (keyLength < key.length) {
+                            key[keyLength] = c;
+                        }
+                        keyLength++;
+                    }
+                    emit(c);
+                } else {
+                    appendToValue(c);
+                }
+                continue;
+            }
+            switch (c) {
+                case '"': {
+                    inString = true;
+                    inKey = depth > 0 && containers[depth - 1] && expectKey;
+                    passThrough = inKey || depth == 0 || !replaceable[depth - 1];
+                    if (passThrough) {
+                        keyLength = 0;
+                        emit(c);
+                    } else {
+                        stringLength = 0;
+                        spilling = false;
+                        stringStartChars = inputChars;
+                    }
+                    break;
+                }
+                case '{': {
+                    push(true);
+                    expectKey = true;
+                    emit(c);
+                    break;
+                }
+                case '[': {
+                    push(false);
+                    expectKey = false;
+                    emit(c);
+                    break;
+                }
+                case '}':
+                case ']': {
+                    if (depth > 0) {
+                        depth--;
+                    }
+                    expectKey = false;
+                    emit(c);
+                    break;
+                }
+                case ':': {
+                    if (depth > 0 && containers[depth - 1]) {
+                        memberStarted(depth - 1);
+                    }
+                    expectKey = false;
+                    emit(c);
+                    break;
+                }
+                case ',': {
+                    expectKey = depth > 0 && containers[depth - 1];
+                    emit(c);
+                    break;
+                }
+                default: {
+                    emit(c);
+                }
+            }
+        }
+        inputBytes += read;
+    }
+
+    private void push(boolean object) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            replaceable = Arrays.copyOf(replaceable, depth * 2);
+            inContext = Arrays.copyOf(inContext, depth * 2);
+            contextMember = Arrays.copyOf(contextMember, depth * 2);
+        }
+        final boolean parentInContext = depth > 0 && (inContext[depth - 1] || contextMember[depth - 1]);
+        containers[depth] = object;
+        inContext[depth] = parentInContext;
+        contextMember[depth] = false;
+        //the values in an object are replaceable depending on their key
+        replaceable[depth] = !object && depth > 0 && !parentInContext && replaceable[depth - 1];
+        depth++;
+    }
+
+    /**
+     * Called with the key of a member of the object at the level.
+     */
+    private void memberStarted(int level) {
+        final boolean keyword = keyLength > 0 && key[0] == '@';
+        contextMember[level] = keyword && isKey("@context");
+        replaceable[level] = !inContext[level] && (!keyword || isKey("@value"));
+    }
+
+    private boolean isKey(String keyword) {
+        if (keyLength != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (key[i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendToValue(byte c) throws IOException {
+        if (spilling) {
+            store.write(c);
+        } else if (stringLength < threshold) {
+            stringBuffer[stringLength++] = c;
+        } else {
+            spilling = true;
+            store.startLiteral();
+            store.write(stringBuffer, 0, stringLength);
+            store.write(c);
+        }
+    }
+
+    /**
+     * @param inputEnd the offset in the input after the closing quote
+     */
+    private void endString(long inputEnd) throws IOException {
+        inString = false;
+        if (passThrough) {
+            emit((byte) '"');
+            return;
+        }
+        emit((byte) '"');
+        if (spilling) {
+            final String placeholder = store.endLiteral();
+            final byte[] placeholderBytes = placeholder.getBytes(UTF8);
+            emit(placeholderBytes, placeholderBytes.length);
+            emit((byte) '"');
+            //the characters of the content, without the quotes
+            final long contentChars = inputChars - 1 - stringStartChars;
+            addReplacement(inputEnd, contentChars - placeholder.length());
+        } else {
+            emit(stringBuffer, stringLength);
+            emit((byte) '"');
+        }
+    }
+
+    private void addReplacement(long inputEnd, long charDifference) {
+        if (replacements == replacementEnds.length) {
+            replacementEnds = Arrays.copyOf(replacementEnds, replacements * 2);
+            byteDeltas = Arrays.copyOf(byteDeltas, replacements * 2);
+            replacementCharEnds = Arrays.copyOf(replacementCharEnds, replacements * 2);
+            charDeltas = Arrays.copyOf(charDeltas, replacements * 2);
+        }
+        final long outputEnd = outputBytes + outLimit;
+        final long charDelta = (replacements == 0 ? 0 : charDeltas[replacements - 1]) + charDifference;
+        replacementEnds[replacements] = outputEnd;
+        byteDeltas[replacements] = inputEnd - outputEnd;
+        replacementCharEnds[replacements] = inputChars - charDelta;
+        charDeltas[replacements] = charDelta;
+        replacements++;
+    }
+
+    private void emit(byte c) {
+        ensureCapacity(1);
+        outBuffer[outLimit++] = c;
+    }
+
+    private void emit(byte[] bytes, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, 0, outBuffer, outLimit, length);
+        outLimit += length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (outLimit + additional > outBuffer.length) {
+            outBuffer = Arrays.copyOf(outBuffer, Math.max(outBuffer.length * 2, outLimit + additional));
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Language;
+
+/**
+ * Keeps the content of large string values in a temporary file.
+ * 
+ * In the document passed to the JSON parser the values are replaced by a
+ * placeholder from which the literal is created. The temporary file is 
+ * deleted when the store is closed, after that the content of the literals
+ * can no longer be read.
+ * 
+ * While the content is written its hash code and digest as needed by 
+ * {@link LargeLiteral} are computed, so the content is not read back for 
+ * creating the literal.
+ *
+ * @author user
+ */
+class LargeLiteralStore implements Closeable {
+
+    //a character from the private use area starting the placeholders
+    private static final char MARKER = '\uE000';
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final String placeholderPrefix;
+    private long[] offsets = new long[16];
+    private long[] lengths = new long[16];
+    private int[] hashes = new int[16];
+    private long[] charLengths = new long[16];
+    private byte[][] digests = new byte[16][];
+    private final ContentDigest contentDigest = new ContentDigest();
+    private int size = 0;
+    private long position = 0;
+    private long currentStart = -1;
+
+    /**
+     * @param directory the directory for the temporary file, null for the 
+     * default temporary directory
+     */
+    LargeLiteralStore(File directory) throws IOException {
+        file = File.createTempFile("jsonld-literals", ".tmp", directory);
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+        //the random part makes sure the placeholder doesn't occur in the document
+        placeholderPrefix = MARKER + Long.toHexString(new Random().nextLong()) + ":";
+    }
+
+    void startLiteral() {
+        currentStart = position;
+        contentDigest.reset();
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        position += length;
+        for (int i = offset; i < offset + length; i++) {
+            contentDigest.update(bytes[i]);
+        }
+    }
+
+    void write(int b) throws IOException {
+        out.write(b);
+        position++;
+        contentDigest.update((byte) b);
+    }
+
+    /**
+     * Completes the current literal.
+     * 
+     * @return the placeholder for the literal
+     */
+    String endLiteral() throws IOException {
+        out.flush();
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            charLengths = Arrays.copyOf(charLengths, size * 2);
+            digests = Arrays.copyOf(digests, size * 2);
+        }
+        offsets[size] = currentStart;
+        lengths[size] = position - currentStart;
+        hashes[size] = contentDigest.hash;
+        charLengths[size] = contentDigest.charCount;
+        digests[size] = contentDigest.digest();
+        return placeholderPrefix + (size++);
+    }
+
+    /**
+     * Creates the literal for a placeholder.
+     * 
+     * @return the literal or null if the value is not a placeholder
+     */
+    LargeLiteral getLiteral(String value, Language language, IRI dataType) {
+        if (value.isEmpty() || value.charAt(0) != MARKER || !value.startsWith(placeholderPrefix)) {
+            return null;
+        }
+        final int index = Integer.parseInt(value.substring(placeholderPrefix.length()));
+        return new LargeLiteral(this, offsets[index], lengths[index], hashes[index], charLengths[index],
+                digests[index], language, dataType);
+    }
+
+    /**
+     * Returns the content for a placeholder, for values used as IRI.
+     * 
+     * @return the content or the value itself if it is not a placeholder
+     */
+    String resolve(String value) {
+        final LargeLiteral literal = getLiteral(value, null, null);
+        return literal == null ? value : literal.getLexicalForm();
+    }
+
+    /**
+     * @return the JSON escaped content of a string
+     */
+    InputStream openStream(final long offset, final long length) {
+        return new InputStream() {
+
+            private long read = 0;
+
+            @Override
+            public int read() throws IOException {
+                final byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (read == length) {
+                    return -1;
+                }
+                final ByteBuffer target = ByteBuffer.wrap(b, off, (int) Math.min(len, length - read));
+                final int result = channel.read(target, offset + read);
+                if (result == -1) {
+                    throw new IOException("Temporary file truncated");
+                }
+                read += result;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Computes the hash code as String.hashCode and the digest of the UTF-16 
+     * characters of the lexical form from the bytes of the JSON escaped and 
+     * UTF-8 encoded content, as {@link LargeLiteral} reads it.
+     */
+    private static class ContentDigest {
+
+        private static final int LITERAL = 0;
+        private static final int ESCAPE = 1;
+        private static final int UNICODE_ESCAPE = 2;
+
+        private final MessageDigest messageDigest = GraphIndex.createMessageDigest();
+        private final byte[] buffer = new byte[8192];
+        private int bufferLength;
+        private int state;
+        //the code point of the UTF-8 sequence or the value of the unicode escape
+        private int value;
+        //continuation bytes or hex digits still expected
+        private int remaining;
+        int hash;
+        long charCount;
+
+        void reset() {
+            messageDigest.reset();
+            bufferLength = 0;
+            state = LITERAL;
+            remaining = 0;
+            hash = 0;
+            charCount = 0;
+        }
+
+        void update(byte b) {
+            switch (state) {
+                case ESCAPE: {
+                    updateEscape(b);
+                    break;
+                }
+                case UNICODE_ESCAPE: {
+                    value = (value << 4) + Character.digit(b, 16);
+                    if (--remaining == 0) {
+                        state = LITERAL;
+                        append((char) value);
+                    }
+                    break;
+                }
+                default: {
+                    updateUtf8(b);
+                }
+            }
+        }
+
+        private void updateEscape(byte b) {
+            state = LITERAL;
+            switch (b) {
+                case 'b':
+                    append('\b');
+                    break;
+                case 'f':
+                    append('\f');
+                    break;
+                case 'n':
+                    append('\n');
+                    break;
+                case 'r':
+                    append('\r');
+                    break;
+                case 't':
+                    append('\t');
+                    break;
+                case 'u': {
+                    state = UNICODE_ESCAPE;
+                    value = 0;
+                    remaining = 4;
+                    break;
+                }
+                default:
+                    append((char) b);
+            }
+        }
+
+        private void updateUtf8(byte b) {
+            if (remaining > 0) {
+                if ((b & 0xC0) == 0x80) {
+                    value = (value << 6) | (b & 0x3F);
+                    if (--remaining == 0) {
+                        appendCodePoint(value);
+                    }
+                    return;
+                }
+                //a truncated sequence, decoded as replacement like a reader does
+                remaining = 0;
+                append('\uFFFD');
+            }
+            if (b >= 0) {
+                if (b == '\\') {
+                    state = ESCAPE;
+                } else {
+                    append((char) b);
+                }
+            } else if ((b & 0xE0) == 0xC0) {
+                value = b & 0x1F;
+                remaining = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                value = b & 0x0F;
+                remaining = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                value = b & 0x07;
+                remaining = 3;
+            } else {
+                append('\uFFFD');
+            }
+        }
+
+        private void appendCodePoint(int codePoint) {
+            if (Character.isBmpCodePoint(codePoint)) {
+                append((char) codePoint);
+            } else {
+                append(Character.highSurrogate(codePoint));
+                append(Character.lowSurrogate(codePoint));
+            }
+        }
+
+        //the characters are digested as by LargeLiteral, high byte first
+        private void append(char c) {
+            hash = 31 * hash + c;
+            charCount++;
+            if (bufferLength == buffer.length) {
+                messageDigest.update(buffer, 0, bufferLength);
+                bufferLength = 0;
+            }
+            buffer[bufferLength++] = (byte) (c >> 8);
+            buffer[bufferLength++] = (byte) c;
+        }
+
+        byte[] digest() {
+            messageDigest.update(buffer, 0, bufferLength);
+            bufferLength = 0;
+            return messageDigest.digest();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException ex) {
+            //the file is deleted anyway
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.Triple;
+
+/**
+ * A QuadSink writing N-Quads, one line per statement as it is added. 
+ * Statements of the default graph are written without graph label.
+ * 
+ * The writer must be closed to flush the output.
+ *
+ * @author user
+ */
+public class NQuadsWriter implements QuadSink, Closeable {
+
+    private final Writer out;
+    private final NTriples.BlankNodeLabels labels = new NTriples.BlankNodeLabels();
+    private final StringBuilder buffer = new StringBuilder();
+
+    public NQuadsWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, Charset.forName("utf-8"))));
+    }
+
+    public NQuadsWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void add(BlankNodeOrIRI graphName, Triple triple) {
+        try {
+            NTriples.appendNode(buffer, triple.getSubject(), labels);
+            buffer.append(' ');
+            NTriples.appendIri(buffer, triple.getPredicate());
+            buffer.append(' ');
+            NTriples.appendTerm(buffer, triple.getObject(), labels, out);
+            if (graphName != null) {
+                buffer.append(' ');
+                NTriples.appendNode(buffer, graphName, labels);
+            }
+            buffer.append(" .\n");
+            out.append(buffer);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     */
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
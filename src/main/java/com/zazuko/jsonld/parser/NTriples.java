@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.WeakHashMap;
+import java.util.function.BiConsumer;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Literal;
+import org.apache.clerezza.commons.rdf.RDFTerm;
+import org.apache.clerezza.rdf.ontologies.XSD;
+
+/**
+ * Escaping of terms as needed by N-Triples and related serializations, 
+ * shared by the writers.
+ *
+ * @author user
+ */
+final class NTriples {
+
+    private static final String HEX = "0123456789ABCDEF";
+
+    private NTriples() {
+    }
+
+    /**
+     * Labels blank nodes, the label of a node stays the same as long as the
+     * node is referenced.
+     */
+    static final class BlankNodeLabels {
+
+        private final WeakHashMap<BlankNode, String> node2IdMap = new WeakHashMap<>();
+        private int idCounter = 1;
+
+        /**
+         * @return the label including the "_:" prefix
+         */
+        String get(BlankNode node) {
+            String id = node2IdMap.get(node);
+            if (id == null) {
+                id = "_:b" + idCounter++;
+                node2IdMap.put(node, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Appends a term as in N-Triples, see {@link #appendLiteral} for the 
+     * use of out.
+     */
+    static void appendTerm(StringBuilder target, RDFTerm term, BlankNodeLabels labels, Writer out)
+            throws IOException {
+        if (term instanceof Literal) {
+            appendLiteral(target, (Literal) term, out);
+        } else {
+            appendNode(target, (BlankNodeOrIRI) term, labels);
+        }
+    }
+
+    /**
+     * Appends the IRI or the label of the blank node.
+     */
+    static void appendNode(StringBuilder target, BlankNodeOrIRI node, BlankNodeLabels labels) {
+        if (node instanceof IRI) {
+            appendIri(target, (IRI) node);
+        } else {
+            target.append(labels.get((BlankNode) node));
+        }
+    }
+
+    /**
+     * Appends the literal with its language or its datatype unless that is
+     * xsd:string. See {@link #appendLexicalForm} for the use of out.
+     */
+    static void appendLiteral(StringBuilder target, Literal literal, Writer out) throws IOException {
+        appendLiteral(target, literal, out, NTriples::appendIri);
+    }
+
+    /**
+     * Appends the literal as {@link #appendLiteral(StringBuilder, Literal, Writer)}
+     * using datatypeAppender to append the datatype IRI, this allows the
+     * datatype to be abbreviated.
+     */
+    static void appendLiteral(StringBuilder target, Literal literal, Writer out,
+            BiConsumer<StringBuilder, IRI> datatypeAppender) throws IOException {
+        appendLexicalForm(target, literal, out);
+        if (literal.getLanguage() != null) {
+            target.append('@').append(literal.getLanguage());
+        } else if (!XSD.string.equals(literal.getDataType())) {
+            target.append("^^");
+            datatypeAppender.accept(target, literal.getDataType());
+        }
+    }
+
+    /**
+     * Appends the lexical form of the literal enclosed in double quotes.
+     * 
+     * The content of a LargeLiteral is not loaded into memory if out is 
+     * given: the content of target is written to out and cleared, then the 
+     * escaped content is copied to out. If out is null the content is
+     * appended to target.
+     */
+    static void appendLexicalForm(StringBuilder target, Literal literal, Writer out) throws IOException {
+        if (literal instanceof LargeLiteral && out != null) {
+            target.append('"');
+            out.append(target);
+            target.setLength(0);
+            try (Reader reader = ((LargeLiteral) literal).openReader()) {
+                writeEscaped(out, reader);
+            }
+            target.append('"');
+        } else {
+            appendString(target, literal.getLexicalForm());
+        }
+    }
+
+    /**
+     * Appends the IRI enclosed in angle brackets, escaping characters not
+     * allowed in an IRIREF.
+     */
+    static void appendIri(StringBuilder target, IRI iri) {
+        final String value = iri.getUnicodeString();
+        target.append('<');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                case '>':
+                case '"':
+                case '{':
+                case '}':
+                case '|':
+                case '^':
+                case '`':
+                case '\\': {
+                    appendUnicodeEscape(target, c);
+                    break;
+                }
+                default: {
+                    if (c <= 0x20) {
+                        appendUnicodeEscape(target, c);
+                    } else {
+                        target.append(c);
+                    }
+                }
+            }
+        }
+        target.append('>');
+    }
+
+    /**
+     * Appends the string enclosed in double quotes, escaping characters not
+     * allowed in a STRING_LITERAL_QUOTE.
+     */
+    static void appendString(StringBuilder target, CharSequence value) {
+        target.append('"');
+        appendEscaped(target, value);
+        target.append('"');
+    }
+
+    /**
+     * Appends the characters of the string content escaping those not 
+     * allowed within a STRING_LITERAL_QUOTE.
+     */
+    static void appendEscaped(StringBuilder target, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"': {
+                    target.append("\\\"");
+                    break;
+                }
+                case '\\': {
+                    target.append("\\\\");
+                    break;
+                }
+                case '\n': {
+                    target.append("\\n");
+                    break;
+                }
+                case '\r': {
+                    target.append("\\r");
+                    break;
+                }
+                default: {
+                    target.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the characters read from the reader escaping those not allowed
+     * within a STRING_LITERAL_QUOTE.
+     */
+    static void writeEscaped(Writer target, Reader content) throws IOException {
+        final char[] chars = new char[8192];
+        final StringBuilder escaped = new StringBuilder(chars.length + 64);
+        int read;
+        while ((read = content.read(chars)) != -1) {
+            escaped.setLength(0);
+            appendEscaped(escaped, CharBuffer.wrap(chars, 0, read));
+            target.append(escaped);
+        }
+    }
+
+    private static void appendUnicodeEscape(StringBuilder target, char c) {
+        target.append("\\u");
+        target.append(HEX.charAt((c >> 12) & 0xF));
+        target.append(HEX.charAt((c >> 8) & 0xF));
+        target.append(HEX.charAt((c >> 4) & 0xF));
+        target.append(HEX.charAt(c & 0xF));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events of the parser.
+ * 
+ * The events are disabled by default, they are recorded when enabled in the
+ * recording settings, e.g. with 
+ * {@code -XX:StartFlightRecording:settings=profile,com.zazuko.jsonld.SinkAdd#enabled=true}
+ * or in a custom .jfc file. Callers check {@link #AVAILABLE} and
+ * {@code isRecording()} before creating an event, so that nothing but these
+ * checks is done when no recording wants the event, and the event classes
+ * are not loaded on VMs without Flight Recorder.
+ *
+ * @author user
+ */
+final class ParserEvents {
+
+    static final boolean AVAILABLE = isAvailable();
+
+    private ParserEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @Name("com.zazuko.jsonld.ContextParse")
+    @Label("Context Parse")
+    @Description("Parsing of a @context definition")
+    @Category("JSON-LD")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ContextParse extends Event {
+
+        private static final EventType TYPE = EventType.getEventType(ContextParse.class);
+
+        @Label("Terms")
+        int terms;
+
+        static boolean isRecording() {
+            return TYPE.isEnabled();
+        }
+    }
+
+    @Name("com.zazuko.jsonld.GraphElement")
+    @Label("Graph Element")
+    @Description("Parsing of an element of the top-level @graph")
+    @Category("JSON-LD")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GraphElement extends Event {
+
+        private static final EventType TYPE = EventType.getEventType(GraphElement.class);
+
+        @Label("Character Offset")
+        @Description("The offset of the element in the document in UTF-16 characters, -1 if unknown")
+        long charOffset;
+
+        @Label("Triples")
+        long triples;
+
+        static boolean isRecording() {
+            return TYPE.isEnabled();
+        }
+    }
+
+    @Name("com.zazuko.jsonld.SinkAdd")
+    @Label("Sink Add")
+    @Description("A call passing a statement to the sink that took longer than the threshold")
+    @Category("JSON-LD")
+    @Enabled(false)
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class SinkAdd extends Event {
+
+        private static final EventType TYPE = EventType.getEventType(SinkAdd.class);
+
+        @Label("Sink")
+        Class<?> sink;
+
+        static boolean isRecording() {
+            return TYPE.isEnabled();
+        }
+    }
+
+    @Name("com.zazuko.jsonld.InputRefill")
+    @Label("Input Refill")
+    @Description("A read of the input filling a buffer")
+    @Category("JSON-LD")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class InputRefill extends Event {
+
+        private static final EventType TYPE = EventType.getEventType(InputRefill.class);
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+
+        static boolean isRecording() {
+            return TYPE.isEnabled();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.File;
+
+/**
+ * Optional settings for the parser.
+ *
+ * @author user
+ */
+public class ParserOptions {
+
+    private Projection projection = null;
+    private int largeLiteralThreshold = 0;
+    private File largeLiteralDirectory = null;
+    private int lookAheadLimit = 0;
+
+    /**
+     * @return the projection restricting the produced triples, null if all 
+     * triples are produced
+     */
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @param projection the projection restricting the produced triples, null 
+     * to produce all triples
+     */
+    public void setProjection(Projection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * @return the length in bytes above which string values are kept in a 
+     * temporary file, 0 if they are always kept in memory
+     */
+    public int getLargeLiteralThreshold() {
+        return largeLiteralThreshold;
+    }
+
+    /**
+     * Sets the length in bytes of the JSON encoded string value above which
+     * the value is written to a temporary file and the object of the triple is
+     * a {@link LargeLiteral}. Such literals can only be read till the parse 
+     * method returns, so this is useful with sinks writing the triples out.
+     * 
+     * @param largeLiteralThreshold the threshold, 0 or less to keep all values 
+     * in memory
+     */
+    public void setLargeLiteralThreshold(int largeLiteralThreshold) {
+        this.largeLiteralThreshold = largeLiteralThreshold;
+    }
+
+    /**
+     * @return the directory for the temporary file of large literals, null
+     * for the default temporary directory
+     */
+    public File getLargeLiteralDirectory() {
+        return largeLiteralDirectory;
+    }
+
+    /**
+     * @param largeLiteralDirectory the directory for the temporary file of 
+     * large literals, null for the default temporary directory
+     */
+    public void setLargeLiteralDirectory(File largeLiteralDirectory) {
+        this.largeLiteralDirectory = largeLiteralDirectory;
+    }
+
+    /**
+     * @return the maximal number of JSON events buffered while looking for 
+     * @id and @context keys following other keys of an object
+     */
+    public int getLookAheadLimit() {
+        return lookAheadLimit;
+    }
+
+    /**
+     * Sets the maximal number of JSON events buffered while looking for @id 
+     * and @context keys following other keys of an object. Objects starting 
+     * with these keys are parsed without buffering. If such a key occurs 
+     * after the limit the parse fails.
+     * 
+     * @param lookAheadLimit the number of events, 0 to require @id and 
+     * @context to be the first keys
+     */
+    public void setLookAheadLimit(int lookAheadLimit) {
+        this.lookAheadLimit = lookAheadLimit;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+
+/**
+ * A JsonParser that tokenizes on a dedicated thread.
+ *
+ * The wrapped parser is driven by a tokenizer thread which hands the events 
+ * together with their string values and locations in batches to the thread
+ * consuming this parser. Like the wrapped parser used directly the tokenizer
+ * stops at the end of the top-level value, it does not read trailing input.
+ * Closing this parser ends the tokenizer thread and closes the wrapped one.
+ *
+ * @author user
+ */
+class PipelinedJsonParser implements JsonParser {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_SIZE = 64;
+
+    private static class TokenBatch {
+
+        final Event[] events = new Event[BATCH_SIZE];
+        final String[] values = new String[BATCH_SIZE];
+        final long[] lineNumbers = new long[BATCH_SIZE];
+        final long[] columnNumbers = new long[BATCH_SIZE];
+        final long[] streamOffsets = new long[BATCH_SIZE];
+        int size;
+        boolean last;
+    }
+
+    private final JsonParser source;
+    private final SpscRingBuffer<TokenBatch> filled = new SpscRingBuffer<>(QUEUE_SIZE);
+    private final SpscRingBuffer<TokenBatch> recycled = new SpscRingBuffer<>(QUEUE_SIZE);
+    private final Thread tokenizer;
+    private volatile Throwable failure;
+    private TokenBatch current;
+    private int position = 0;
+
+    PipelinedJsonParser(JsonParser source) {
+        this.source = source;
+        tokenizer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tokenize();
+            }
+        }, "jsonld-tokenizer");
+        tokenizer.setDaemon(true);
+        tokenizer.start();
+    }
+
+    private void tokenize() {
+        try {
+            TokenBatch batch = obtainBatch();
+            int depth = 0;
+            while (source.hasNext()) {
+                final Event event = source.next();
+                batch.events[batch.size] = event;
+                final JsonLocation location = source.getLocation();
+                batch.lineNumbers[batch.size] = location.getLineNumber();
+                batch.columnNumbers[batch.size] = location.getColumnNumber();
+                batch.streamOffsets[batch.size] = location.getStreamOffset();
+                switch (event) {
+                    case KEY_NAME:
+                    case VALUE_STRING:
+                    case VALUE_NUMBER: {
+                        batch.values[batch.size] = source.getString();
+                        break;
+                    }
+                    default: {
+                        batch.values[batch.size] = null;
+                    }
+                }
+                batch.size++;
+                if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                    depth++;
+                } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                    depth--;
+                }
+                if (depth == 0) {
+                    //the end of the top-level value
+                    break;
+                }
+                if (batch.size == BATCH_SIZE) {
+                    filled.put(batch);
+                    batch = obtainBatch();
+                }
+            }
+            batch.last = true;
+            filled.put(batch);
+        } catch (CancellationException ex) {
+            //the consumer gave up, nobody is interested in the rest
+        } catch (Throwable ex) {
+            //the consumer gets the failure once it has taken the batches published so far
+            failure = ex;
+            filled.close();
+        }
+    }
+
+    private TokenBatch obtainBatch() {
+        final TokenBatch recycledBatch = recycled.poll();
+        if (recycledBatch == null) {
+            return new TokenBatch();
+        }
+        recycledBatch.size = 0;
+        return recycledBatch;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || position == current.size) {
+            if (current != null) {
+                if (current.last) {
+                    return false;
+                }
+                //not to keep the strings reachable while the batch is recycled
+                Arrays.fill(current.values, 0, current.size, null);
+                recycled.offer(current);
+            }
+            try {
+                current = filled.take();
+            } catch (CancellationException ex) {
+                throw failure != null ? SpscRingBuffer.propagate(failure) : ex;
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.events[position++];
+    }
+
+    @Override
+    public String getString() {
+        final String value = current.values[position - 1];
+        if (value == null) {
+            throw new IllegalStateException("Current event has no string value: " + current.events[position - 1]);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        final String value = getString();
+        return value.indexOf('.') == -1 && value.indexOf('e') == -1 && value.indexOf('E') == -1;
+    }
+
+    @Override
+    public int getInt() {
+        return getBigDecimal().intValue();
+    }
+
+    @Override
+    public long getLong() {
+        return getBigDecimal().longValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        return new BigDecimal(getString());
+    }
+
+    /**
+     * @return the location after the current event, like the wrapped parser
+     */
+    @Override
+    public JsonLocation getLocation() {
+        if (current == null || position == 0) {
+            return new BatchLocation(1, 1, 0);
+        }
+        return new BatchLocation(current.lineNumbers[position - 1], current.columnNumbers[position - 1],
+                current.streamOffsets[position - 1]);
+    }
+
+    @Override
+    public void close() {
+        filled.close();
+        recycled.close();
+        try {
+            tokenizer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    private static class BatchLocation implements JsonLocation {
+
+        private final long lineNumber;
+        private final long columnNumber;
+        private final long streamOffset;
+
+        BatchLocation(long lineNumber, long columnNumber, long streamOffset) {
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.streamOffset = streamOffset;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public long getStreamOffset() {
+            return streamOffset;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.util.concurrent.CancellationException;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+
+/**
+ * A QuadSink that forwards the statements to another sink on a dedicated 
+ * thread.
+ * 
+ * Triples are passed in batches, {@link #finish()} must be called after the 
+ * last triple has been added.
+ *
+ * @author user
+ */
+class PipelinedQuadSink implements QuadSink {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_SIZE = 64;
+
+    private static class TripleBatch {
+
+        final Triple[] triples = new Triple[BATCH_SIZE];
+        final BlankNodeOrIRI[] graphNames = new BlankNodeOrIRI[BATCH_SIZE];
+        //for a prefix declaration the entry has a prefix instead of a triple
+        final String[] prefixes = new String[BATCH_SIZE];
+        final IRI[] namespaces = new IRI[BATCH_SIZE];
+        int size;
+        boolean last;
+    }
+
+    private final QuadSink target;
+    private final SpscRingBuffer<TripleBatch> filled = new SpscRingBuffer<>(QUEUE_SIZE);
+    private final SpscRingBuffer<TripleBatch> recycled = new SpscRingBuffer<>(QUEUE_SIZE);
+    private final Thread writer;
+    private volatile Throwable failure;
+    private TripleBatch current = new TripleBatch();
+
+    PipelinedQuadSink(QuadSink target) {
+        this.target = target;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "jsonld-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                final TripleBatch batch = filled.take();
+                for (int i = 0; i < batch.size; i++) {
+                    if (batch.prefixes[i] != null) {
+                        target.addPrefix(batch.prefixes[i], batch.namespaces[i]);
+                        batch.prefixes[i] = null;
+                        batch.namespaces[i] = null;
+                    } else {
+                        target.add(batch.graphNames[i], batch.triples[i]);
+                        //not to keep the triples reachable while the batch is recycled
+                        batch.triples[i] = null;
+                        batch.graphNames[i] = null;
+                    }
+                }
+                if (batch.last) {
+                    return;
+                }
+                recycled.offer(batch);
+            }
+        } catch (CancellationException ex) {
+            //the producer gave up
+        } catch (Throwable ex) {
+            failure = ex;
+            filled.close();
+            recycled.close();
+        }
+    }
+
+    @Override
+    public void add(BlankNodeOrIRI graphName, Triple triple) {
+        current.graphNames[current.size] = graphName;
+        current.triples[current.size++] = triple;
+        if (current.size == BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    @Override
+    public void addPrefix(String prefix, IRI namespace) {
+        current.prefixes[current.size] = prefix;
+        current.namespaces[current.size++] = namespace;
+        if (current.size == BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        try {
+            filled.put(current);
+        } catch (CancellationException ex) {
+            throw failure != null ? SpscRingBuffer.propagate(failure) : ex;
+        }
+        current = recycled.poll();
+        if (current == null) {
+            current = new TripleBatch();
+        } else {
+            current.size = 0;
+        }
+    }
+
+    /**
+     * Hands the remaining triples to the sink thread and waits till they 
+     * have been added to the target sink.
+     * 
+     * @throws RuntimeException the exception thrown by the target sink if any,
+     * an Error thrown by it is rethrown as well
+     */
+    void finish() {
+        current.last = true;
+        publish();
+        join();
+        if (failure != null) {
+            throw SpscRingBuffer.propagate(failure);
+        }
+    }
+
+    /**
+     * Stops the sink thread without waiting for pending triples to be added.
+     */
+    void abort() {
+        filled.close();
+        recycled.close();
+        join();
+    }
+
+    private void join() {
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.rdf.ontologies.RDF;
+
+/**
+ * Restricts the triples produced by the parser to some predicates and types.
+ * 
+ * The parser checks the projection when it encounters a key, the values of 
+ * keys mapping to unwanted predicates are skipped without being processed, 
+ * this includes any node objects nested in them.
+ *
+ * @author user
+ */
+public class Projection {
+
+    private final Set<IRI> predicates;
+    private final Set<BlankNodeOrIRI> types;
+
+    /**
+     * Creates a Projection.
+     * 
+     * @param predicates the predicates of the triples to produce, null for all
+     * @param types the types of which rdf:type triples are to be produced, 
+     * null for all. If types are specified, rdf:type triples with these types 
+     * are produced irrespective of the predicates.
+     */
+    public Projection(Set<IRI> predicates, Set<? extends BlankNodeOrIRI> types) {
+        this.predicates = predicates == null ? null : Collections.unmodifiableSet(new HashSet<>(predicates));
+        this.types = types == null ? null : Collections.unmodifiableSet(new HashSet<BlankNodeOrIRI>(types));
+    }
+
+    /**
+     * @return true if values of this predicate are wanted, for rdf:type the
+     * types still have to be checked with {@link #isTypeWanted}
+     */
+    boolean isPredicateWanted(IRI predicate) {
+        if (predicates == null || predicates.contains(predicate)) {
+            return true;
+        }
+        return types != null && predicate.equals(RDF.type);
+    }
+
+    /**
+     * @return true if an rdf:type triple with this type is wanted
+     */
+    boolean isTypeWanted(BlankNodeOrIRI type) {
+        if (!isPredicateWanted(RDF.type)) {
+            return false;
+        }
+        return types == null || types.contains(type);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+
+/**
+ * Receives the statements of a dataset together with the graph they are in.
+ *
+ * @author user
+ */
+public interface QuadSink {
+
+    /**
+     * Invoked for every statement as soon as it has been parsed.
+     * 
+     * @param graphName the name of the graph containing the triple, null for
+     * the default graph
+     * @param triple the statement
+     */
+    void add(BlankNodeOrIRI graphName, Triple triple);
+
+    /**
+     * Invoked when the document defines a term mapping to an IRI that can 
+     * serve as namespace for abbreviating IRIs, the default implementation 
+     * ignores it.
+     * 
+     * @param prefix the term as defined in the context
+     * @param namespace the IRI the term is mapped to
+     */
+    default void addPrefix(String prefix, IRI namespace) {
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Records an InputRefill event for the reads of the buffer of the JSON 
+ * tokenizer.
+ *
+ * @author user
+ */
+class RefillEventInputStream extends FilterInputStream {
+
+    private RefillEventInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the stream wrapped if Flight Recorder is available.
+     */
+    static InputStream wrap(InputStream in) {
+        return ParserEvents.AVAILABLE ? new RefillEventInputStream(in) : in;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (!ParserEvents.InputRefill.isRecording()) {
+            return in.read(b, off, len);
+        }
+        final ParserEvents.InputRefill event = new ParserEvents.InputRefill();
+        event.begin();
+        final int read = in.read(b, off, len);
+        event.bytes = read;
+        event.commit();
+        return read;
+    }
+}
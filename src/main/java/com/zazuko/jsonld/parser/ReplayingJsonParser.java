@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+
+/**
+ * A JsonParser first returning buffered events and then the ones of the 
+ * parser they were read from.
+ * 
+ * Events are buffered with {@link #add(JsonParser.Event, String)} before the 
+ * replay starts. While replaying the location is known only for the start of
+ * objects, as needed for the offsets of graph elements.
+ *
+ * @author user
+ */
+class ReplayingJsonParser implements JsonParser {
+
+    private final JsonParser source;
+    private Event[] events = new Event[16];
+    private String[] values = new String[16];
+    //the stream offset of START_OBJECT events, -1 for the others
+    private long[] offsets = new long[16];
+    private int size = 0;
+    private int position = 0;
+    private boolean replaying = true;
+
+    /**
+     * @param source the parser the buffered events were read from and which
+     * provides the events after them
+     */
+    ReplayingJsonParser(JsonParser source) {
+        this.source = source;
+    }
+
+    /**
+     * @param value the string value of the event, null for events without 
+     * one
+     */
+    void add(Event event, String value) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        events[size] = event;
+        values[size] = value;
+        offsets[size] = event == Event.START_OBJECT ? source.getLocation().getStreamOffset() : -1;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the parser the events after the buffered ones are read from
+     */
+    JsonParser getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if all buffered events have been returned
+     */
+    boolean isExhausted() {
+        return position == size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < size || source.hasNext();
+    }
+
+    @Override
+    public Event next() {
+        if (position < size) {
+            return events[position++];
+        }
+        if (replaying) {
+            replaying = false;
+            //allow the values to be collected
+            events = null;
+            values = null;
+            offsets = null;
+        }
+        if (!source.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return source.next();
+    }
+
+    @Override
+    public String getString() {
+        if (replaying) {
+            final String value = values[position - 1];
+            if (value == null) {
+                throw new IllegalStateException("Current event has no string value: " + events[position - 1]);
+            }
+            return value;
+        }
+        return source.getString();
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        if (replaying) {
+            return getBigDecimal().scale() == 0;
+        }
+        return source.isIntegralNumber();
+    }
+
+    @Override
+    public int getInt() {
+        return replaying ? getBigDecimal().intValue() : source.getInt();
+    }
+
+    @Override
+    public long getLong() {
+        return replaying ? getBigDecimal().longValue() : source.getLong();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        return replaying ? new BigDecimal(getString()) : source.getBigDecimal();
+    }
+
+    @Override
+    public JsonLocation getLocation() {
+        if (replaying) {
+            return new ReplayedLocation(position == 0 ? -1 : offsets[position - 1]);
+        }
+        return source.getLocation();
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    private static class ReplayedLocation implements JsonLocation {
+
+        private final long streamOffset;
+
+        ReplayedLocation(long streamOffset) {
+            this.streamOffset = streamOffset;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public long getStreamOffset() {
+            return streamOffset;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.clerezza.commons.rdf.Triple;
+
+/**
+ * A TripleSink writing sorted and deduplicated N-Triples, so that all triples 
+ * with the same subject are adjacent.
+ * 
+ * The triples are collected as N-Triples lines into runs of bounded memory,
+ * a full run is sorted in parallel and written to a compressed temporary 
+ * file. On 
+ * closing the runs are merged into the output, at most 64 at a time, with 
+ * more runs they are first merged into fewer larger ones. If everything fits 
+ * into a single run no temporary file is written.
+ * 
+ * The writer must be closed to write the output.
+ *
+ * @author user
+ */
+public class SortingSink implements TripleSink, Closeable {
+
+    /**
+     * The default memory to use for a run, in bytes.
+     */
+    public static final long DEFAULT_MEMORY = 64L * 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final int BUFFER_SIZE = 65536;
+    //estimate of the memory used by a line besides its characters, including
+    //the reference in the array copied for sorting
+    private static final int LINE_OVERHEAD = 72;
+    //the maximal number of runs read at the same time
+    private static final int DEFAULT_FAN_IN = 64;
+
+    private final OutputStream out;
+    private final long memory;
+    private final File tempDirectory;
+    private final int fanIn;
+    private final NTriples.BlankNodeLabels labels = new NTriples.BlankNodeLabels();
+    private final StringBuilder buffer = new StringBuilder();
+    private final List<String> lines = new ArrayList<>();
+    private long linesMemory = 0;
+    private final List<File> runFiles = new ArrayList<>();
+
+    public SortingSink(OutputStream out) {
+        this(out, DEFAULT_MEMORY, null);
+    }
+
+    /**
+     * @param out the stream the N-Triples are written to
+     * @param memory the approximate number of bytes the triples of a run may 
+     * use
+     * @param tempDirectory the directory for the runs, null for the default 
+     * temporary-file directory
+     */
+    public SortingSink(OutputStream out, long memory, File tempDirectory) {
+        this(out, memory, tempDirectory, DEFAULT_FAN_IN);
+    }
+
+    /**
+     * @param fanIn the maximal number of runs merged at once, at least 2
+     */
+    SortingSink(OutputStream out, long memory, File tempDirectory, int fanIn) {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("At least two runs must be merged at once");
+        }
+        this.out = out;
+        this.memory = memory;
+        this.tempDirectory = tempDirectory;
+        this.fanIn = fanIn;
+    }
+
+    @Override
+    public void add(Triple triple) {
+        NTriples.appendNode(buffer, triple.getSubject(), labels);
+        buffer.append(' ');
+        NTriples.appendIri(buffer, triple.getPredicate());
+        buffer.append(' ');
+        try {
+            //without writer the content of a LargeLiteral, which is not available after parsing, is copied too
+            NTriples.appendTerm(buffer, triple.getObject(), labels, null);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        buffer.append(" .");
+        final String line = buffer.toString();
+        buffer.setLength(0);
+        lines.add(line);
+        linesMemory += LINE_OVERHEAD + 2L * line.length();
+        if (linesMemory >= memory) {
+            spill();
+        }
+    }
+
+    /**
+     * Writes the sorted triples, deletes the temporary files and closes the 
+     * output stream.
+     */
+    @Override
+    public void close() {
+        try {
+            try (Writer writer = createWriter(out)) {
+                if (runFiles.isEmpty()) {
+                    writeRun(writer);
+                } else {
+                    if (!lines.isEmpty()) {
+                        spill();
+                    }
+                    //intermediate passes so that no more than fanIn runs are open
+                    while (runFiles.size() > fanIn) {
+                        final File runFile = createRunFile();
+                        final List<File> merged = runFiles.subList(0, fanIn);
+                        try (Writer runWriter = createRunWriter(runFile)) {
+                            merge(merged, runWriter);
+                        }
+                        for (File mergedFile : merged) {
+                            mergedFile.delete();
+                        }
+                        merged.clear();
+                    }
+                    merge(runFiles, writer);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+            runFiles.clear();
+        }
+    }
+
+    private void spill() {
+        try {
+            final File runFile = createRunFile();
+            try (Writer writer = createRunWriter(runFile)) {
+                writeRun(writer);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    //the file is deleted on closing
+    private File createRunFile() throws IOException {
+        final File result = File.createTempFile("jsonld-sort", ".nt.gz", tempDirectory);
+        runFiles.add(result);
+        return result;
+    }
+
+    //sorts the collected lines and writes them without duplicates
+    private void writeRun(Writer writer) throws IOException {
+        final String[] sorted = lines.toArray(new String[lines.size()]);
+        lines.clear();
+        Arrays.parallelSort(sorted);
+        String previous = null;
+        for (String line : sorted) {
+            if (!line.equals(previous)) {
+                writer.write(line);
+                writer.write('\n');
+                previous = line;
+            }
+        }
+        linesMemory = 0;
+    }
+
+    private static void merge(List<File> runs, Writer writer) throws IOException {
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+        try {
+            for (File runFile : runs) {
+                final RunReader reader = new RunReader(runFile);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            String previous = null;
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+                if (!reader.line.equals(previous)) {
+                    writer.write(reader.line);
+                    writer.write('\n');
+                    previous = reader.line;
+                }
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    private static Writer createRunWriter(File runFile) throws IOException {
+        return createWriter(new GZIPOutputStream(new FileOutputStream(runFile), BUFFER_SIZE));
+    }
+
+    private static Writer createWriter(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, UTF8), BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the lines of a run, ordered by the current line.
+     */
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+
+        private final BufferedReader reader;
+        String line;
+
+        RunReader(File runFile) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(runFile), BUFFER_SIZE), UTF8), BUFFER_SIZE);
+        }
+
+        boolean advance() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return line.compareTo(other.line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free queue for exactly one producer and one consumer thread.
+ * 
+ * Used to hand batches from one pipeline stage to the next without taking
+ * locks on the hot path.
+ *
+ * @author user
+ */
+final class SpscRingBuffer<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+    //index of the next element to take, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    //index of the next free slot, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    //producer side copy of head, avoids reading the shared counter on every offer
+    private long cachedHead;
+    //consumer side copy of tail
+    private long cachedTail;
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity the capacity, must be a power of two
+     */
+    SpscRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        buffer = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds an element if there is space.
+     * 
+     * @return true if the element was added, false if the buffer is full
+     */
+    boolean offer(E element) {
+        final long currentTail = tail.get();
+        if (currentTail - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) currentTail & mask] = element;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Takes the next element if there is one.
+     * 
+     * @return the next element or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        final long currentHead = head.get();
+        if (currentHead >= cachedTail) {
+            cachedTail = tail.get();
+            if (currentHead >= cachedTail) {
+                return null;
+            }
+        }
+        final int index = (int) currentHead & mask;
+        final E result = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(currentHead + 1);
+        return result;
+    }
+
+    /**
+     * Adds an element waiting for space to become available.
+     * 
+     * @throws CancellationException if the buffer is closed while waiting
+     */
+    void put(E element) {
+        int attempt = 0;
+        while (!offer(element)) {
+            if (closed) {
+                throw new CancellationException("Ring buffer closed");
+            }
+            backOff(attempt++);
+        }
+    }
+
+    /**
+     * Takes the next element waiting for one to become available.
+     * 
+     * @throws CancellationException if the buffer is closed while waiting
+     */
+    E take() {
+        int attempt = 0;
+        E result;
+        while ((result = poll()) == null) {
+            if (closed) {
+                throw new CancellationException("Ring buffer closed");
+            }
+            backOff(attempt++);
+        }
+        return result;
+    }
+
+    /**
+     * Makes threads waiting in put or take give up, used to tear down a 
+     * pipeline when one of its stages failed.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Rethrows the failure of the stage on the other side of a buffer in 
+     * the thread of this stage, an Error is thrown directly.
+     * 
+     * @return the failure as RuntimeException, to be thrown by the caller
+     */
+    static RuntimeException propagate(Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        return new RuntimeException(failure);
+    }
+
+    private static void backOff(int attempt) {
+        if (attempt < 100) {
+            //busy spin, the other side is most likely just about to deliver
+        } else if (attempt < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50000);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Locates the characters relevant for skipping JSON values and for reading
+ * strings in a byte buffer.
+ * 
+ * The buffer is indexed in blocks of 64 bytes, for each block a bitmap of 
+ * the positions of quotes and backslashes and one of quotes and brackets is 
+ * computed, eight bytes at a time using SIMD within a register. Skipping 
+ * then jumps from one set bit to the next instead of looking at every byte.
+ * Reading strings uses a separate bitmap of quotes, backslashes and control
+ * characters, as a parser needs no other one. It is only computed for 
+ * strings longer than a few words, shorter ones end before the bitmap of 
+ * their block pays off.
+ * 
+ * The index of a block is kept till the next one is requested, it must be
+ * invalidated when the content of the buffer changes.
+ *
+ * @author user
+ */
+final class StructuralIndex {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int SHORT_STRING_LENGTH = 32;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long QUOTES = 0x2222222222222222L;
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+    private static final long OPENING = 0x7B7B7B7B7B7B7B7BL;
+    private static final long CLOSING = 0x7D7D7D7D7D7D7D7DL;
+    //or-ing 0x20 maps '[' to '{' and ']' to '}' and no other byte to these
+    private static final long BRACKET_FOLD = 0x2020202020202020L;
+    //the bytes below 0x20 are those with none of these bits set
+    private static final long CONTROL_MASK = 0xE0E0E0E0E0E0E0E0L;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long SPACES = 0x2020202020202020L;
+
+    private final byte[] buffer;
+    private final ByteBuffer words;
+    private int blockStart = -1;
+    //bit i is set if byte blockStart + i is a quote or backslash
+    private long stringBits;
+    //bit i is set if byte blockStart + i is a quote, brace or square bracket
+    private long containerBits;
+    private int stringEndBlockStart = -1;
+    //bit i is set if byte stringEndBlockStart + i is a quote, backslash or control character
+    private long stringEndBits;
+
+    StructuralIndex(byte[] buffer) {
+        this.buffer = buffer;
+        this.words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void invalidate() {
+        blockStart = -1;
+        stringEndBlockStart = -1;
+    }
+
+    /**
+     * Returns the position of the first quote or backslash at or after pos
+     * and before limit, limit if there is none.
+     */
+    int nextStringChar(int pos, int limit) {
+        while (pos < limit) {
+            final int start = pos & -BLOCK_SIZE;
+            index(start, limit);
+            final long bits = stringBits & (-1L << (pos - start));
+            if (bits != 0) {
+                return start + Long.numberOfTrailingZeros(bits);
+            }
+            pos = start + BLOCK_SIZE;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the position of the first quote, backslash or control 
+     * character, which ends the literal characters of a string, at or after 
+     * pos and before limit, limit if there is none.
+     */
+    int nextStringEndChar(int pos, int limit) {
+        if ((pos & -BLOCK_SIZE) != stringEndBlockStart) {
+            //most strings are short, looking at their bytes is faster than indexing the block
+            final int end = Math.min(pos + SHORT_STRING_LENGTH, limit);
+            for (int i = pos; i < end; i++) {
+                final byte b = buffer[i];
+                if (b == '"' || b == '\\' || (b >= 0 && b < 0x20)) {
+                    return i;
+                }
+            }
+            pos = end;
+        }
+        while (pos < limit) {
+            final int start = pos & -BLOCK_SIZE;
+            if (start != stringEndBlockStart) {
+                indexStringEnds(start, limit);
+            }
+            final long bits = stringEndBits & (-1L << (pos - start));
+            if (bits != 0) {
+                return start + Long.numberOfTrailingZeros(bits);
+            }
+            pos = start + BLOCK_SIZE;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the position of the first quote, brace or square bracket at or
+     * after pos and before limit, limit if there is none.
+     */
+    int nextContainerChar(int pos, int limit) {
+        while (pos < limit) {
+            final int start = pos & -BLOCK_SIZE;
+            index(start, limit);
+            final long bits = containerBits & (-1L << (pos - start));
+            if (bits != 0) {
+                return start + Long.numberOfTrailingZeros(bits);
+            }
+            pos = start + BLOCK_SIZE;
+        }
+        return limit;
+    }
+
+    private void index(int start, int limit) {
+        if (start == blockStart) {
+            return;
+        }
+        final int end = Math.min(start + BLOCK_SIZE, limit);
+        long quotes = 0;
+        long backslashes = 0;
+        long brackets = 0;
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            final long word = words.getLong(i);
+            final long folded = word | BRACKET_FOLD;
+            final int shift = i - start;
+            quotes |= toBits(matches(word, QUOTES)) << shift;
+            backslashes |= toBits(matches(word, BACKSLASHES)) << shift;
+            brackets |= toBits(matches(folded, OPENING) | matches(folded, CLOSING)) << shift;
+        }
+        for (; i < end; i++) {
+            final long bit = 1L << (i - start);
+            switch (buffer[i]) {
+                case '"': {
+                    quotes |= bit;
+                    break;
+                }
+                case '\\': {
+                    backslashes |= bit;
+                    break;
+                }
+                case '{':
+                case '}':
+                case '[':
+                case ']': {
+                    brackets |= bit;
+                    break;
+                }
+            }
+        }
+        stringBits = quotes | backslashes;
+        containerBits = quotes | brackets;
+        blockStart = start;
+    }
+
+    private void indexStringEnds(int start, int limit) {
+        final int end = Math.min(start + BLOCK_SIZE, limit);
+        long bits = 0;
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            final long word = words.getLong(i);
+            if (mayContainStringEnd(word)) {
+                bits |= toBits(matches(word, QUOTES) | matches(word, BACKSLASHES) | matches(word & CONTROL_MASK, 0))
+                        << (i - start);
+            }
+        }
+        for (; i < end; i++) {
+            if (buffer[i] == '"' || buffer[i] == '\\' || (buffer[i] >= 0 && buffer[i] < 0x20)) {
+                bits |= 1L << (i - start);
+            }
+        }
+        stringEndBits = bits;
+        stringEndBlockStart = start;
+    }
+
+    /**
+     * Tests if a word has a quote, backslash or control character with fewer
+     * operations than matching them, it never misses one but may report one
+     * in a word without.
+     */
+    private static boolean mayContainStringEnd(long word) {
+        final long quotes = word ^ QUOTES;
+        final long backslashes = word ^ BACKSLASHES;
+        //a byte below the subtracted one borrows, setting the high bit unless it was set before
+        return ((((quotes - ONES) & ~quotes) | ((backslashes - ONES) & ~backslashes) | ((word - SPACES) & ~word))
+                & ~LOW_BITS) != 0;
+    }
+
+    /**
+     * Returns a word with the high bit of every byte set for which the byte 
+     * of word equals the one of pattern, without false positives.
+     */
+    static long matches(long word, long pattern) {
+        final long x = word ^ pattern;
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    /**
+     * Gathers the high bits of the eight bytes into the low eight bits, the 
+     * one of the lowest byte becoming bit 0.
+     */
+    static long toBits(long highBits) {
+        return ((highBits >>> 7) * 0x0102040810204080L) >>> 56;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.zazuko.jsonld.parser;
 
+import org.apache.clerezza.commons.rdf.IRI;
 import org.apache.clerezza.commons.rdf.Triple;
 
 /**
@@ -31,4 +32,15 @@ import org.apache.clerezza.commons.rdf.Triple;
  */
 public interface TripleSink {
     void add(Triple triple);
+
+    /**
+     * Invoked when the document defines a term mapping to an IRI that can 
+     * serve as namespace for abbreviating IRIs. Sinks writing serializations
+     * supporting prefixes may use this, the default implementation ignores it.
+     * 
+     * @param prefix the term as defined in the context
+     * @param namespace the IRI the term is mapped to
+     */
+    default void addPrefix(String prefix, IRI namespace) {
+    }
 }
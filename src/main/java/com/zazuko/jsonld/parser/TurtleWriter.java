@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Literal;
+import org.apache.clerezza.commons.rdf.RDFTerm;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.rdf.ontologies.RDF;
+
+/**
+ * A TripleSink writing Turtle.
+ * 
+ * Consecutive triples with the same subject are written as a predicate list,
+ * with the same subject and predicate as object list. The prefixes defined in 
+ * the context of the parsed document are declared and used to abbreviate IRIs.
+ * Nothing but the current statement is kept in memory.
+ * 
+ * The writer must be closed to terminate the last statement.
+ *
+ * @author user
+ */
+public class TurtleWriter implements TripleSink, Closeable {
+
+    private final Writer out;
+    private final Map<String, String> prefix2namespace = new HashMap<>();
+    private final Map<String, String> namespace2prefix = new HashMap<>();
+    private final NTriples.BlankNodeLabels labels = new NTriples.BlankNodeLabels();
+    private final StringBuilder buffer = new StringBuilder();
+    private BlankNodeOrIRI currentSubject = null;
+    private IRI currentPredicate = null;
+
+    public TurtleWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, Charset.forName("utf-8"))));
+    }
+
+    public TurtleWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void add(Triple triple) {
+        final BlankNodeOrIRI subject = triple.getSubject();
+        final IRI predicate = triple.getPredicate();
+        if (subject.equals(currentSubject)) {
+            if (predicate.equals(currentPredicate)) {
+                buffer.append(" ,\n\t\t");
+            } else {
+                buffer.append(" ;\n\t");
+                appendPredicate(predicate);
+                buffer.append(' ');
+            }
+        } else {
+            if (currentSubject != null) {
+                buffer.append(" .\n");
+            }
+            appendNode(subject);
+            buffer.append(' ');
+            appendPredicate(predicate);
+            buffer.append(' ');
+        }
+        currentSubject = subject;
+        currentPredicate = predicate;
+        appendTerm(triple.getObject());
+        write();
+    }
+
+    @Override
+    public void addPrefix(String prefix, IRI namespace) {
+        final String namespaceString = namespace.getUnicodeString();
+        if (!isNamespace(namespaceString) || !isPrefixName(prefix)
+                || namespaceString.equals(prefix2namespace.get(prefix))) {
+            return;
+        }
+        endStatement();
+        final String previousNamespace = prefix2namespace.put(prefix, namespaceString);
+        if (previousNamespace != null) {
+            //another prefix may have been declared for the same namespace since
+            namespace2prefix.remove(previousNamespace, prefix);
+        }
+        namespace2prefix.put(namespaceString, prefix);
+        buffer.append("@prefix ").append(prefix).append(": ");
+        NTriples.appendIri(buffer, namespace);
+        buffer.append(" .\n");
+        write();
+    }
+
+    /**
+     * Terminates the last statement and closes the underlying writer.
+     */
+    @Override
+    public void close() {
+        endStatement();
+        write();
+        try {
+            out.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void endStatement() {
+        if (currentSubject != null) {
+            buffer.append(" .\n");
+            currentSubject = null;
+            currentPredicate = null;
+        }
+    }
+
+    private void write() {
+        try {
+            out.append(buffer);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        buffer.setLength(0);
+    }
+
+    private void appendPredicate(IRI predicate) {
+        if (predicate.equals(RDF.type)) {
+            buffer.append('a');
+        } else {
+            appendIri(predicate);
+        }
+    }
+
+    private void appendTerm(RDFTerm term) {
+        if (term instanceof Literal) {
+            appendLiteral((Literal) term);
+        } else {
+            appendNode((BlankNodeOrIRI) term);
+        }
+    }
+
+    private void appendNode(BlankNodeOrIRI node) {
+        if (node instanceof IRI) {
+            appendIri((IRI) node);
+        } else {
+            buffer.append(labels.get((BlankNode) node));
+        }
+    }
+
+    private void appendLiteral(Literal literal) {
+        try {
+            NTriples.appendLiteral(buffer, literal, out, this::appendIri);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void appendIri(IRI iri) {
+        appendIri(buffer, iri);
+    }
+
+    private void appendIri(StringBuilder target, IRI iri) {
+        final String value = iri.getUnicodeString();
+        final int split = Math.max(value.lastIndexOf('/'), value.lastIndexOf('#')) + 1;
+        if (split > 0) {
+            final String prefix = namespace2prefix.get(value.substring(0, split));
+            if (prefix != null && isLocalName(value, split)) {
+                target.append(prefix).append(':').append(value, split, value.length());
+                return;
+            }
+        }
+        NTriples.appendIri(target, iri);
+    }
+
+    private static boolean isNamespace(String iri) {
+        return iri.endsWith("/") || iri.endsWith("#");
+    }
+
+    private static boolean isPrefixName(String prefix) {
+        if (prefix.isEmpty() || !Character.isLetter(prefix.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < prefix.length(); i++) {
+            final char c = prefix.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //a conservative subset of PN_LOCAL, anything else is written as full IRI
+    private static boolean isLocalName(String value, int start) {
+        for (int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || (c == '-' && i > start))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the bytes allocated per triple stay within the budgets in 
+ * allocation-budgets.properties.
+ * 
+ * Each path is run a few times to let the JIT compiler settle before the 
+ * smallest measured allocation is compared with the budget. When a change 
+ * legitimately allocates more the budget should be raised together with it.
+ * 
+ * The allocations differ between JDK versions, so the budgets are recorded 
+ * per version, with the java.specification.version appended to the key. On
+ * a version without budgets the test is skipped, unless it is the version
+ * the build targets, which is passed as the system property 
+ * jsonld.targetJdk. To calibrate the budgets for another version add it to 
+ * jdks in the properties with budgets of 0, the failures report the bytes 
+ * per triple measured.
+ *
+ * @author user
+ */
+public class AllocationTest {
+
+    private static final int RUNS = 10;
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+    private static Properties budgets;
+    private static String jdk;
+
+    public AllocationTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation measurement not supported by this JVM",
+                bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        budgets = new Properties();
+        try (InputStream in = AllocationTest.class.getResourceAsStream("allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+        jdk = System.getProperty("java.specification.version");
+        if (!Arrays.asList(budgets.getProperty("jdks").split(",")).contains(jdk)) {
+            Assert.assertNotEquals("No allocation budgets for JDK " + jdk + ", the version the build targets",
+                    System.getProperty("jsonld.targetJdk"), jdk);
+            Assume.assumeTrue("No allocation budgets for JDK " + jdk, false);
+        }
+    }
+
+    @Test
+    public void resourcesToNTriples() throws Exception {
+        check("resources.ntriples", resources(), Path.NTRIPLES);
+    }
+
+    @Test
+    public void resourcesToGraph() throws Exception {
+        check("resources.graph", resources(), Path.GRAPH);
+    }
+
+    @Test
+    public void resourcesToTripleSink() throws Exception {
+        check("resources.sink", resources(), Path.SINK);
+    }
+
+    @Test
+    public void repeatedToNTriples() throws Exception {
+        check("repeated.ntriples", repeated(), Path.NTRIPLES);
+    }
+
+    @Test
+    public void repeatedToGraph() throws Exception {
+        check("repeated.graph", repeated(), Path.GRAPH);
+    }
+
+    @Test
+    public void repeatedToTripleSink() throws Exception {
+        check("repeated.sink", repeated(), Path.SINK);
+    }
+
+    private enum Path {
+        NTRIPLES, GRAPH, SINK
+    }
+
+    private static void check(String budgetKey, byte[][] documents, Path path) {
+        final double budget = Double.parseDouble(budgets.getProperty(budgetKey + "." + jdk));
+        long minBytes = Long.MAX_VALUE;
+        long triples = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final long before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            triples = 0;
+            for (byte[] document : documents) {
+                triples += parse(document, path);
+            }
+            final long bytes = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            minBytes = Math.min(minBytes, bytes);
+        }
+        final double bytesPerTriple = (double) minBytes / triples;
+        Assert.assertTrue(budgetKey + " on JDK " + jdk + ": " + Math.round(bytesPerTriple) + " bytes per triple exceed the budget of "
+                + budget, bytesPerTriple <= budget);
+    }
+
+    private static long parse(byte[] document, Path path) {
+        final InputStream in = new ByteArrayInputStream(document);
+        final IRI base = new IRI("http://base/");
+        switch (path) {
+            case NTRIPLES: {
+                final CountingOutputStream out = new CountingOutputStream();
+                JsonLdParser.parse(in, out, base);
+                return out.lines;
+            }
+            case GRAPH: {
+                final Graph graph = new SimpleGraph();
+                JsonLdParser.parse(in, graph, base);
+                return graph.size();
+            }
+            default: {
+                final long[] count = {0};
+                JsonLdParser.parse(in, triple -> count[0]++, base);
+                return count[0];
+            }
+        }
+    }
+
+    private static byte[][] resources() throws Exception {
+        final byte[][] result = new byte[ExampleDocuments.NAMES.length][];
+        for (int i = 0; i < ExampleDocuments.NAMES.length; i++) {
+            try (InputStream in = AllocationTest.class.getResourceAsStream(ExampleDocuments.NAMES[i] + ".json")) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                copy(in, bytes);
+                result[i] = bytes.toByteArray();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A document with a few thousand similar nodes, for the allocations per 
+     * triple once the per document setup is negligible.
+     */
+    private static byte[][] repeated() throws Exception {
+        final StringBuilder json = new StringBuilder("{\"@context\": {\"ex\": \"http://example.org/\", "
+                + "\"knows\": {\"@id\": \"ex:knows\", \"@type\": \"@id\"}}, \"@graph\": [");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"@id\": \"ex:n").append(i).append("\", \"@type\": \"ex:Node\", ")
+                    .append("\"ex:name\": \"Node ").append(i).append("\", ")
+                    .append("\"ex:size\": {\"@value\": \"").append(i % 100)
+                    .append("\", \"@type\": \"http://www.w3.org/2001/XMLSchema#integer\"}, ")
+                    .append("\"ex:label\": {\"@value\": \"n").append(i).append("\", \"@language\": \"en\"}, ")
+                    .append("\"knows\": [\"ex:n").append(i + 1).append("\", \"ex:n").append(i + 2).append("\"], ")
+                    .append("\"ex:address\": {\"ex:city\": \"City ").append(i % 10).append("\"}}");
+        }
+        json.append("]}");
+        return new byte[][]{json.toString().getBytes("utf-8")};
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        long lines = 0;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
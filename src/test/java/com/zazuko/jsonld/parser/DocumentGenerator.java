@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generates JSON-LD documents of arbitrary size for tests.
+ * 
+ * The document is a top-level @graph of node objects with nested nodes, 
+ * literals of different kinds and a list. It is produced while it is read 
+ * so that documents larger than the heap can be parsed. The same seed and 
+ * settings always produce the same document.
+ *
+ * @author user
+ */
+public class DocumentGenerator {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final int CHUNK_SIZE = 8192;
+    private static final int LIST_ITEMS_PER_CHUNK = 256;
+
+    private final long seed;
+    private int nodeCount = 1000;
+    private int nestingDepth = 2;
+    private int listLength = 5;
+    private int contextSize = 10;
+    private double blankNodeRatio = 0.2;
+
+    public DocumentGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param nodeCount the number of elements of the top-level @graph
+     */
+    public void setNodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @param nestingDepth the depth of node objects nested in every element
+     */
+    public void setNestingDepth(int nestingDepth) {
+        this.nestingDepth = nestingDepth;
+    }
+
+    /**
+     * @param listLength the length of the list in every element, 0 for no 
+     * list
+     */
+    public void setListLength(int listLength) {
+        this.listLength = listLength;
+    }
+
+    /**
+     * @param contextSize the number of terms defined in the context
+     */
+    public void setContextSize(int contextSize) {
+        if (contextSize < 1) {
+            throw new IllegalArgumentException("At least one term is needed");
+        }
+        this.contextSize = contextSize;
+    }
+
+    /**
+     * @param blankNodeRatio the share of node objects without @id
+     */
+    public void setBlankNodeRatio(double blankNodeRatio) {
+        this.blankNodeRatio = blankNodeRatio;
+    }
+
+    /**
+     * @return the number of triples the parser emits for the document
+     */
+    public long getTripleCount() {
+        final Generation generation = new Generation();
+        while (generation.next()) {
+            generation.buffer.setLength(0);
+        }
+        return generation.triples;
+    }
+
+    /**
+     * @return a stream producing the document as it is read
+     */
+    public InputStream openStream() {
+        final Generation generation = new Generation();
+        return new InputStream() {
+
+            private byte[] chunk = new byte[0];
+            private int position = 0;
+
+            @Override
+            public int read() {
+                if (!ensureAvailable()) {
+                    return -1;
+                }
+                return chunk[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!ensureAvailable()) {
+                    return -1;
+                }
+                final int count = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, count);
+                position += count;
+                return count;
+            }
+
+            private boolean ensureAvailable() {
+                while (position == chunk.length) {
+                    if (!generation.next()) {
+                        return false;
+                    }
+                    chunk = generation.buffer.toString().getBytes(UTF8);
+                    generation.buffer.setLength(0);
+                    position = 0;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The state of producing one document.
+     */
+    private class Generation {
+
+        final StringBuilder buffer = new StringBuilder(CHUNK_SIZE * 2);
+        final Random random = new Random(seed);
+        long triples = 0;
+        private int nextNode = -1;
+        private int remainingListItems = 0;
+        private boolean done = false;
+        private int idCounter = 0;
+
+        /**
+         * Appends the next part of the document to the buffer.
+         * 
+         * @return false if the document is complete
+         */
+        boolean next() {
+            if (done) {
+                return false;
+            }
+            if (nextNode == -1) {
+                appendHeader();
+                nextNode = 0;
+            }
+            while (buffer.length() < CHUNK_SIZE) {
+                if (remainingListItems > 0) {
+                    appendListItems();
+                } else if (nextNode < nodeCount) {
+                    if (nextNode > 0) {
+                        buffer.append(",\n");
+                    }
+                    nextNode++;
+                    appendTopLevelNode();
+                } else {
+                    buffer.append("]}\n");
+                    done = true;
+                    break;
+                }
+            }
+            return true;
+        }
+
+        private void appendHeader() {
+            buffer.append("{\"@context\": {\"ex\": \"http://example.org/\", ")
+                    .append("\"xsd\": \"http://www.w3.org/2001/XMLSchema#\"");
+            for (int i = 0; i < contextSize; i++) {
+                buffer.append(", \"t").append(i).append("\": \"http://example.org/vocab/t").append(i).append('"');
+            }
+            buffer.append("},\n\"@graph\": [\n");
+        }
+
+        private void appendTopLevelNode() {
+            buffer.append('{');
+            appendNodeContent(0);
+            if (listLength > 0) {
+                buffer.append(", \"").append(randomTerm()).append("\": {\"@list\": [");
+                //the property, a first and a rest triple per item
+                triples += 1 + 2L * listLength;
+                remainingListItems = listLength;
+                appendListItems();
+            } else {
+                buffer.append('}');
+            }
+        }
+
+        private void appendListItems() {
+            final int count = Math.min(remainingListItems, LIST_ITEMS_PER_CHUNK);
+            for (int i = 0; i < count; i++) {
+                if (remainingListItems != listLength) {
+                    buffer.append(", ");
+                }
+                buffer.append("\"item ").append(random.nextInt(1000)).append('"');
+                remainingListItems--;
+            }
+            if (remainingListItems == 0) {
+                buffer.append("]}}");
+            }
+        }
+
+        private void appendNestedNode(int depth) {
+            buffer.append('{');
+            appendNodeContent(depth);
+            buffer.append('}');
+        }
+
+        private void appendNodeContent(int depth) {
+            final boolean blank = random.nextDouble() < blankNodeRatio;
+            if (!blank) {
+                buffer.append("\"@id\": \"ex:node").append(idCounter++).append("\", ");
+            }
+            buffer.append("\"@type\": \"ex:Type").append(random.nextInt(5)).append('"');
+            triples++;
+            final int literals = 1 + random.nextInt(3);
+            for (int i = 0; i < literals; i++) {
+                buffer.append(", \"").append(randomTerm()).append("\": ");
+                switch (random.nextInt(3)) {
+                    case 0: {
+                        buffer.append("\"value ").append(idCounter).append(' ').append(i).append('"');
+                        break;
+                    }
+                    case 1: {
+                        buffer.append("{\"@value\": \"").append(random.nextInt()).append("\", \"@type\": \"xsd:int\"}");
+                        break;
+                    }
+                    default: {
+                        buffer.append("{\"@value\": \"Wert ").append(idCounter).append(' ').append(i)
+                                .append("\", \"@language\": \"de\"}");
+                    }
+                }
+                triples++;
+            }
+            if (depth < nestingDepth) {
+                buffer.append(", \"").append(randomTerm()).append("\": ");
+                triples++;
+                appendNestedNode(depth + 1);
+            }
+        }
+
+        private String randomTerm() {
+            return "t" + random.nextInt(contextSize);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class GraphDiffTest {
+
+    private static final String CONTEXT = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": [";
+    private static final IRI P = new IRI("http://example.org/p");
+
+    public GraphDiffTest() {
+    }
+
+    @Test
+    public void addedChangedAndRemoved() throws Exception {
+        final File previous = createDocument(CONTEXT
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:b\", \"ex:p\": [\"1\", \"2\"]},"
+                + "{\"@id\": \"ex:gone\", \"ex:p\": \"1\"}]}");
+        final File current = createDocument(CONTEXT
+                + "{\"@id\": \"ex:b\", \"ex:p\": [\"1\", \"3\"]},"
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:new\", \"ex:p\": \"1\"}]}");
+        try {
+            final Graph additions = new SimpleGraph();
+            final Graph removals = new SimpleGraph();
+            final GraphIndex index = GraphDiff.diff(previous, current, additions::add, removals::add, null);
+            Assert.assertEquals(3, index.size());
+            Assert.assertEquals(2, additions.size());
+            Assert.assertTrue(additions.contains(triple("b", "3")));
+            Assert.assertTrue(additions.contains(triple("new", "1")));
+            Assert.assertEquals(2, removals.size());
+            Assert.assertTrue(removals.contains(triple("b", "2")));
+            Assert.assertTrue(removals.contains(triple("gone", "1")));
+        } finally {
+            previous.delete();
+            current.delete();
+        }
+    }
+
+    @Test
+    public void contextAfterGraph() throws Exception {
+        final File previous = createDocument(CONTEXT
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:b\", \"ex:p\": \"1\"}]}");
+        //the same context, but following the @graph
+        final File current = createDocument("{\"@graph\": ["
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:b\", \"ex:p\": \"2\"}],"
+                + "\"@context\": {\"ex\": \"http://example.org/\"}}");
+        try {
+            final Graph additions = new SimpleGraph();
+            final Graph removals = new SimpleGraph();
+            final GraphIndex index = GraphDiff.diff(previous, current, additions::add, removals::add, null);
+            Assert.assertEquals("http://example.org/a", index.getId(0));
+            Assert.assertEquals(1, additions.size());
+            Assert.assertTrue(additions.contains(triple("b", "2")));
+            Assert.assertEquals(1, removals.size());
+            Assert.assertTrue(removals.contains(triple("b", "1")));
+        } finally {
+            previous.delete();
+            current.delete();
+        }
+    }
+
+    @Test
+    public void withoutPreviousDocument() throws Exception {
+        final File previous = createDocument(CONTEXT
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:b\", \"ex:p\": [\"1\", \"2\"]},"
+                + "{\"@id\": \"ex:gone\", \"ex:p\": \"1\"},"
+                + "{\"ex:p\": \"anonymous\"}]}");
+        final File current = createDocument(CONTEXT
+                + "{\"@id\": \"ex:b\", \"ex:p\": [\"1\", \"3\"]},"
+                + "{\"@id\": \"ex:a\", \"ex:p\": \"1\"},"
+                + "{\"@id\": \"ex:new\", \"ex:p\": \"1\"}]}");
+        try {
+            final GraphIndex previousIndex = GraphIndex.build(previous, true, null);
+            final Graph additions = new SimpleGraph();
+            final GraphIndex index = GraphDiff.diff(previousIndex, null, current, additions::add, null, null);
+            //all triples of changed elements
+            Assert.assertEquals(3, additions.size());
+            Assert.assertTrue(additions.contains(triple("b", "1")));
+            Assert.assertTrue(additions.contains(triple("b", "3")));
+            Assert.assertTrue(additions.contains(triple("new", "1")));
+            final int[] removed = GraphDiff.removedElements(previousIndex, index);
+            Assert.assertArrayEquals(new int[]{2, 3}, removed);
+            Assert.assertEquals("http://example.org/gone", previousIndex.getId(removed[0]));
+        } finally {
+            previous.delete();
+            current.delete();
+        }
+    }
+
+    private static TripleImpl triple(String localName, String value) {
+        return new TripleImpl(new IRI("http://example.org/" + localName), P, new PlainLiteralImpl(value));
+    }
+
+    private static File createDocument(String content) throws IOException {
+        final File result = File.createTempFile("graph-diff", ".json");
+        try (OutputStream out = new FileOutputStream(result)) {
+            out.write(content.getBytes("utf-8"));
+        }
+        return result;
+    }
+
+}
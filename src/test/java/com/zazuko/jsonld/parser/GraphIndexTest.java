@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class GraphIndexTest {
+
+    public GraphIndexTest() {
+    }
+
+    @Test
+    public void parseIndexedElement() throws Exception {
+        final File document = new File(getClass().getResource("disconnected.json").toURI());
+        final GraphIndex index = GraphIndex.build(document);
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals("http://example.org/test#jane", index.getId(1));
+        final File indexFile = File.createTempFile("disconnected", ".idx");
+        try {
+            index.write(indexFile);
+            final GraphIndex storedIndex = GraphIndex.read(indexFile);
+            Assert.assertEquals(1, storedIndex.getOrdinal("http://example.org/test#jane"));
+            final Graph graph = new SimpleGraph();
+            storedIndex.parse(document, graph::add, null, "http://example.org/test#john");
+            Assert.assertEquals(1, graph.size());
+            Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/test#john"),
+                    new IRI("http://xmlns.com/foaf/0.1/name"), new PlainLiteralImpl("John"))));
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void idsAreExpanded() throws Exception {
+        final File document = File.createTempFile("graph-index", ".json");
+        final File indexFile = File.createTempFile("graph-index", ".idx");
+        try {
+            try (OutputStream out = new FileOutputStream(document)) {
+                //the context follows the @graph
+                out.write(("{\"@graph\": [{\"@id\": \"ex:a\", \"ex:p\": \"A\"}, {\"@id\": \"b\", \"ex:p\": \"B\"}, "
+                        + "{\"@id\": \"_:c\", \"ex:p\": \"C\"}], "
+                        + "\"@context\": {\"ex\": \"http://example.org/\"}}").getBytes("utf-8"));
+            }
+            final GraphIndex index = GraphIndex.build(document, true, new IRI("http://base/"));
+            index.write(indexFile);
+            final GraphIndex storedIndex = GraphIndex.read(indexFile);
+            Assert.assertTrue(storedIndex.hasDigests());
+            Assert.assertEquals("http://example.org/a", storedIndex.getId(0));
+            Assert.assertEquals("http://base/b", storedIndex.getId(1));
+            Assert.assertEquals("_:c", storedIndex.getId(2));
+            Assert.assertEquals(-1, storedIndex.getOrdinal("ex:a"));
+            Assert.assertEquals(1, storedIndex.getOrdinal("http://base/b"));
+        } finally {
+            document.delete();
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void zeroByteReadsAreNotTheEnd() throws Exception {
+        final byte[] json = "{\"@graph\": [{\"@id\": \"a\"}, {\"@id\": \"b\"}]}".getBytes("utf-8");
+        final InputStream in = new ByteArrayInputStream(json) {
+            boolean empty = true;
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                //alternately returns nothing and a single byte
+                empty = !empty;
+                return empty ? 0 : super.read(b, off, 1);
+            }
+        };
+        final List<String> ids = new ArrayList<>();
+        new GraphScanner(in, false).scan(new GraphScanner.Handler() {
+            @Override
+            public void context(byte[] json) {
+            }
+
+            @Override
+            public void element(int ordinal, long offset, long length, String id, byte[] json) {
+                ids.add(id);
+            }
+        });
+        Assert.assertEquals(Arrays.asList("a", "b"), ids);
+    }
+
+}
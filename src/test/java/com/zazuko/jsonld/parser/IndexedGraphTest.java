@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.util.Iterator;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class IndexedGraphTest {
+
+    public IndexedGraphTest() {
+    }
+
+    @Test
+    public void parseIntoIndexedGraph() throws Exception {
+        final IndexedGraph indexedGraph = new IndexedGraph();
+        JsonLdParser.parse(getClass().getResourceAsStream("knows-circle.json"), indexedGraph, null);
+        final SimpleGraph simpleGraph = new SimpleGraph();
+        JsonLdParser.parse(getClass().getResourceAsStream("knows-circle.json"), simpleGraph, null);
+        Assert.assertEquals(simpleGraph.getImmutableGraph(), indexedGraph.getImmutableGraph());
+    }
+
+    @Test
+    public void filterAfterAddingAndRemoving() {
+        final IRI a = new IRI("http://example.org/a");
+        final IRI b = new IRI("http://example.org/b");
+        final IRI p = new IRI("http://example.org/p");
+        final IRI q = new IRI("http://example.org/q");
+        final BlankNode c = new BlankNode();
+        final IndexedGraph graph = new IndexedGraph();
+        graph.add(new TripleImpl(b, p, a));
+        graph.add(new TripleImpl(a, p, b));
+        graph.add(new TripleImpl(a, q, new PlainLiteralImpl("a")));
+        graph.add(new TripleImpl(a, p, b));
+        Assert.assertEquals(3, graph.size());
+        //added after sorting
+        graph.add(new TripleImpl(c, q, a));
+        graph.add(new TripleImpl(b, p, a));
+        Assert.assertEquals(4, graph.size());
+        Assert.assertEquals(2, count(graph.filter(a, null, null)));
+        Assert.assertEquals(2, count(graph.filter(null, p, null)));
+        Assert.assertEquals(2, count(graph.filter(null, null, a)));
+        Assert.assertEquals(1, count(graph.filter(c, null, a)));
+        Assert.assertEquals(1, count(graph.filter(null, q, a)));
+        Assert.assertEquals(0, count(graph.filter(null, null, new PlainLiteralImpl("b"))));
+        Assert.assertTrue(graph.contains(new TripleImpl(a, q, new PlainLiteralImpl("a"))));
+        final Iterator<Triple> iterator = graph.filter(null, p, null);
+        iterator.next();
+        iterator.remove();
+        Assert.assertTrue(graph.remove(new TripleImpl(c, q, a)));
+        Assert.assertFalse(graph.remove(new TripleImpl(c, q, a)));
+        Assert.assertEquals(2, graph.size());
+        Assert.assertEquals(1, count(graph.filter(null, p, null)));
+    }
+
+    @Test
+    public void removeAbsentTriple() {
+        final IRI a = new IRI("http://example.org/a");
+        final IRI p = new IRI("http://example.org/p");
+        final IndexedGraph graph = new IndexedGraph();
+        graph.add(new TripleImpl(a, p, a));
+        //a term not in the graph
+        Assert.assertFalse(graph.remove(new TripleImpl(a, p, new IRI("http://example.org/unknown"))));
+        //known terms, but not as triple
+        Assert.assertFalse(graph.remove(new TripleImpl(p, p, a)));
+        Assert.assertEquals(1, graph.size());
+    }
+
+    @Test
+    public void addReturnsWhetherTripleWasAdded() {
+        final IRI a = new IRI("http://example.org/a");
+        final IRI b = new IRI("http://example.org/b");
+        final IRI p = new IRI("http://example.org/p");
+        final IndexedGraph graph = new IndexedGraph();
+        Assert.assertTrue(graph.add(new TripleImpl(a, p, b)));
+        Assert.assertFalse(graph.add(new TripleImpl(a, p, b)));
+        Assert.assertTrue(graph.add(new TripleImpl(b, p, a)));
+        Assert.assertEquals(2, graph.size());
+        //sorted by the filter
+        Assert.assertTrue(graph.filter(a, null, null).hasNext());
+        Assert.assertFalse(graph.add(new TripleImpl(a, p, b)));
+        Assert.assertTrue(graph.add(new TripleImpl(a, p, a)));
+        Assert.assertFalse(graph.add(new TripleImpl(a, p, a)));
+        Assert.assertEquals(3, graph.size());
+        //added again after being removed
+        Assert.assertTrue(graph.remove(new TripleImpl(a, p, b)));
+        Assert.assertEquals(2, graph.size());
+        Assert.assertTrue(graph.add(new TripleImpl(a, p, b)));
+        Assert.assertFalse(graph.add(new TripleImpl(a, p, b)));
+        Assert.assertEquals(3, graph.size());
+        final SimpleGraph copy = new SimpleGraph();
+        copy.add(new TripleImpl(b, p, b));
+        copy.add(new TripleImpl(a, p, a));
+        Assert.assertTrue(graph.addAll(copy));
+        Assert.assertFalse(graph.addAll(copy));
+        Assert.assertEquals(4, graph.size());
+        Assert.assertEquals(4, count(graph.filter(null, p, null)));
+    }
+
+    /**
+     * Compares the retained heap and the loading time with SimpleGraph.
+     */
+    @Test
+    public void comparedToSimpleGraph() {
+        ScalingTest.assumeBenchmark();
+        final DocumentGenerator generator = new DocumentGenerator(3);
+        generator.setNodeCount(100000);
+        generator.setBlankNodeRatio(0.3);
+        //warm up
+        load(new IndexedGraph(), generator);
+        load(new SimpleGraph(), generator);
+        final long[] indexed = load(new IndexedGraph(), generator);
+        final long[] simple = load(new SimpleGraph(), generator);
+        System.out.println("IndexedGraph: " + (indexed[0] >> 20) + "MB, " + indexed[1] + "ms, "
+                + "SimpleGraph: " + (simple[0] >> 20) + "MB, " + simple[1] + "ms");
+        Assert.assertTrue("IndexedGraph retains more heap than SimpleGraph", indexed[0] < simple[0]);
+    }
+
+    /**
+     * @return the heap retained by the graph and the milliseconds needed for 
+     * loading and a first lookup
+     */
+    private static long[] load(Graph graph, DocumentGenerator generator) {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        final long start = System.nanoTime();
+        JsonLdParser.parse(generator.openStream(), graph, null);
+        graph.filter(new IRI("http://example.org/none"), null, null).hasNext();
+        final long millis = (System.nanoTime() - start) / 1000000;
+        System.gc();
+        final long retained = runtime.totalMemory() - runtime.freeMemory() - before;
+        Assert.assertEquals(generator.getTripleCount(), graph.size());
+        return new long[]{retained, millis};
+    }
+
+    private static int count(Iterator<Triple> iterator) {
+        int result = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            result++;
+        }
+        return result;
+    }
+
+}
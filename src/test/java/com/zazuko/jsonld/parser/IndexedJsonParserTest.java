@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.json.Json;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class IndexedJsonParserTest {
+
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final String[] WHITESPACE = {"", " ", "  ", "\n", "\r\n", "\r", "\t", "\n\r"};
+    private static final String[] NUMBERS = {"0", "-0", "7", "42", "-13", "3.25", "-0.5", "1e5", "2.5E-3", "6E+2",
+        "2147483648", "-9223372036854775809", "123456789012345678901234567890.5"};
+    private static final String[] STRING_PARTS = {"a", "xyz", " ", "\u00e9", "\u20ac", "\ud83d\ude00", "\\\"", "\\\\",
+        "\\/", "\\b", "\\f", "\\n", "\\r", "\\t", "\\u00e9", "\\ud83d\\ude00", "\\u0000"};
+
+    public IndexedJsonParserTest() {
+    }
+
+    @Test
+    public void sameEventsAsReferenceParser() throws Exception {
+        final Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            final byte[] json = createDocument(random, round < 190 ? 3 : 6).getBytes(UTF8);
+            assertSameEvents(json, new IndexedJsonParser(json));
+            assertSameEvents(json, new IndexedJsonParser(new ChunkedInputStream(json, random)));
+        }
+    }
+
+    @Test
+    public void stringsLongerThanBuffer() throws Exception {
+        final Random random = new Random(5);
+        final StringBuilder document = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            document.append(i == 0 ? "" : ",\n").append('"');
+            final int length = 10000 + random.nextInt(200000);
+            for (int j = 0; j < length; j++) {
+                document.append(STRING_PARTS[random.nextInt(STRING_PARTS.length)]);
+            }
+            document.append('"');
+        }
+        final byte[] json = document.append(']').toString().getBytes(UTF8);
+        assertSameEvents(json, new IndexedJsonParser(new ByteArrayInputStream(json)));
+        assertSameEvents(json, new IndexedJsonParser(new ChunkedInputStream(json, random)));
+    }
+
+    @Test
+    public void rejectsWhatReferenceParserRejects() throws Exception {
+        final String[] documents = {"", "  ", "1", "\"a\"", "true", "{", "[", "{\"a\"}", "{\"a\":}", "{\"a\":1,}",
+            "[1,]", "[,1]", "[01]", "[1.]", "[.5]", "[-]", "[1e]", "[1e+]", "[+1]", "[tru]", "[nul]", "[falsy]",
+            "[\"a\u0001\"]", "[\"a\nb\"]", "[\"\\x\"]", "[\"\\u12G4\"]", "[\"\\u12", "{} x", "[] []", "{1:2}",
+            "[1 2]", "{\"a\" 1}", "{\"a\":1 \"b\":2}", "[\"abc", "[}", "{]", "{\"a\":1]", "[[1}]", "[x]",
+            "\ufeff{}"};
+        for (String document : documents) {
+            final byte[] json = document.getBytes(UTF8);
+            final List<String> expected = new ArrayList<>();
+            final JsonParsingException expectedException = readAll(createReferenceParser(json),
+                    expected);
+            Assert.assertNotNull("the reference parser should reject: " + document, expectedException);
+            final List<String> events = new ArrayList<>();
+            final JsonParsingException exception = readAll(new IndexedJsonParser(json), events);
+            Assert.assertNotNull("should reject: " + document, exception);
+            Assert.assertEquals(document, expected, events);
+        }
+    }
+
+    @Test
+    public void locationOfError() {
+        final String[] documents = {"{\"a\":\n x}", "[1,\r\n  2 3]", "{\"\u00e9\ud83d\ude00\": tru]", "[\"\\q\"]"};
+        for (String document : documents) {
+            final byte[] json = document.getBytes(UTF8);
+            final JsonLocation expected = readAll(createReferenceParser(json),
+                    new ArrayList<>()).getLocation();
+            final JsonLocation location = readAll(new IndexedJsonParser(json), new ArrayList<>()).getLocation();
+            Assert.assertEquals(document, expected.getStreamOffset(), location.getStreamOffset());
+            Assert.assertEquals(document, expected.getLineNumber(), location.getLineNumber());
+            Assert.assertEquals(document, expected.getColumnNumber(), location.getColumnNumber());
+        }
+    }
+
+    /**
+     * Compares the throughput with the one of the reference parser, reading
+     * all events and strings of documents with long and with short strings.
+     * The runs of both parsers alternate, not to favor one by the state of 
+     * the JIT compiler or the machine. Short strings are reported only, 
+     * their decoding dominates with both parsers.
+     */
+    @Test
+    public void fasterThanReferenceParser() throws Exception {
+        ScalingTest.assumeBenchmark();
+        final byte[] longStrings = StructuralIndexTest.createDocument(20000);
+        final StringBuilder shortStrings = new StringBuilder("{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": [");
+        for (int i = 0; i < 200000; i++) {
+            shortStrings.append(i == 0 ? "" : ",\n").append("  {\"@id\": \"ex:n").append(i)
+                    .append("\", \"ex:value\": ").append(i).append(", \"ex:label\": \"label ").append(i).append("\"}");
+        }
+        final byte[] shortStringsJson = shortStrings.append("]}").toString().getBytes(UTF8);
+        long longReference = Long.MAX_VALUE;
+        long longIndexed = Long.MAX_VALUE;
+        long shortReference = Long.MAX_VALUE;
+        long shortIndexed = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            longReference = Math.min(longReference, nanos(longStrings, true));
+            longIndexed = Math.min(longIndexed, nanos(longStrings, false));
+            shortReference = Math.min(shortReference, nanos(shortStringsJson, true));
+            shortIndexed = Math.min(shortIndexed, nanos(shortStringsJson, false));
+        }
+        System.out.println("Long strings: reference " + mbPerSecond(longStrings.length, longReference)
+                + "MB/s, indexed " + mbPerSecond(longStrings.length, longIndexed) + "MB/s; short strings: reference "
+                + mbPerSecond(shortStringsJson.length, shortReference) + "MB/s, indexed "
+                + mbPerSecond(shortStringsJson.length, shortIndexed) + "MB/s");
+        Assert.assertTrue("long strings should be read faster than by the reference parser", longIndexed < longReference);
+    }
+
+    private static long nanos(byte[] json, boolean reference) {
+        final long start = System.nanoTime();
+        final JsonParser parser = reference ? createReferenceParser(json)
+                : new IndexedJsonParser(new ByteArrayInputStream(json));
+        long length = 0;
+        while (parser.hasNext()) {
+            final Event event = parser.next();
+            if (event == Event.KEY_NAME || event == Event.VALUE_STRING || event == Event.VALUE_NUMBER) {
+                length += parser.getString().length();
+            }
+        }
+        parser.close();
+        Assert.assertTrue(length > 0);
+        return System.nanoTime() - start;
+    }
+
+    private static long mbPerSecond(long bytes, long nanos) {
+        return bytes * 1000 / nanos;
+    }
+
+    /**
+     * @return the parser of the JSON-P reference implementation, as used 
+     * before
+     */
+    private static JsonParser createReferenceParser(byte[] json) {
+        return Json.createParserFactory(null).createParser(new ByteArrayInputStream(json), UTF8);
+    }
+
+    private static void assertSameEvents(byte[] json, JsonParser parser) {
+        final JsonParser expected = createReferenceParser(json);
+        assertSameLocation(expected.getLocation(), parser.getLocation());
+        while (expected.hasNext()) {
+            Assert.assertTrue(parser.hasNext());
+            final Event event = expected.next();
+            Assert.assertEquals(event, parser.next());
+            assertSameLocation(expected.getLocation(), parser.getLocation());
+            switch (event) {
+                case VALUE_NUMBER: {
+                    Assert.assertEquals(expected.isIntegralNumber(), parser.isIntegralNumber());
+                    Assert.assertEquals(expected.getBigDecimal(), parser.getBigDecimal());
+                    Assert.assertEquals(expected.getInt(), parser.getInt());
+                    Assert.assertEquals(expected.getLong(), parser.getLong());
+                    //numbers have a string value too
+                }
+                case KEY_NAME:
+                case VALUE_STRING: {
+                    Assert.assertEquals(expected.getString(), parser.getString());
+                    break;
+                }
+                default: {
+                    try {
+                        parser.getString();
+                        Assert.fail("no string value for " + event);
+                    } catch (IllegalStateException ex) {
+                        //expected
+                    }
+                }
+            }
+        }
+        Assert.assertFalse(parser.hasNext());
+        parser.close();
+    }
+
+    private static void assertSameLocation(JsonLocation expected, JsonLocation location) {
+        Assert.assertEquals(expected.getStreamOffset(), location.getStreamOffset());
+        Assert.assertEquals(expected.getLineNumber(), location.getLineNumber());
+        Assert.assertEquals(expected.getColumnNumber(), location.getColumnNumber());
+    }
+
+    /**
+     * Reads the events and strings into the list.
+     *
+     * @return the exception thrown for invalid JSON, null if there is none
+     */
+    private static JsonParsingException readAll(JsonParser parser, List<String> events) {
+        try {
+            while (parser.hasNext()) {
+                final Event event = parser.next();
+                events.add(event.toString());
+                if (event == Event.KEY_NAME || event == Event.VALUE_STRING || event == Event.VALUE_NUMBER) {
+                    events.add(parser.getString());
+                }
+            }
+            return null;
+        } catch (JsonParsingException ex) {
+            return ex;
+        }
+    }
+
+    private static String createDocument(Random random, int depth) {
+        final StringBuilder result = new StringBuilder();
+        appendWhitespace(result, random);
+        appendContainer(result, random, depth);
+        appendWhitespace(result, random);
+        return result.toString();
+    }
+
+    private static void appendContainer(StringBuilder target, Random random, int depth) {
+        final boolean object = random.nextBoolean();
+        target.append(object ? '{' : '[');
+        final int size = random.nextInt(depth == 0 ? 4 : 12);
+        for (int i = 0; i < size; i++) {
+            appendWhitespace(target, random);
+            if (i > 0) {
+                target.append(',');
+                appendWhitespace(target, random);
+            }
+            if (object) {
+                appendString(target, random);
+                appendWhitespace(target, random);
+                target.append(':');
+                appendWhitespace(target, random);
+            }
+            appendValue(target, random, depth);
+        }
+        appendWhitespace(target, random);
+        target.append(object ? '}' : ']');
+    }
+
+    private static void appendValue(StringBuilder target, Random random, int depth) {
+        final int kind = random.nextInt(10);
+        if (kind < 3 && depth > 0) {
+            appendContainer(target, random, depth - 1);
+        } else if (kind < 6) {
+            appendString(target, random);
+        } else if (kind < 8) {
+            target.append(NUMBERS[random.nextInt(NUMBERS.length)]);
+        } else {
+            target.append(kind == 8 ? (random.nextBoolean() ? "true" : "false") : "null");
+        }
+    }
+
+    private static void appendString(StringBuilder target, Random random) {
+        target.append('"');
+        final int length = random.nextInt(10) == 0 ? random.nextInt(3000) : random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            target.append(STRING_PARTS[random.nextInt(STRING_PARTS.length)]);
+        }
+        target.append('"');
+    }
+
+    private static void appendWhitespace(StringBuilder target, Random random) {
+        target.append(WHITESPACE[random.nextInt(WHITESPACE.length)]);
+    }
+
+    /**
+     * Returns at most a random number of bytes per read, as a network 
+     * connection may.
+     */
+    private static class ChunkedInputStream extends InputStream {
+
+        private final InputStream content;
+        private final Random random;
+
+        ChunkedInputStream(byte[] content, Random random) {
+            this.content = new ByteArrayInputStream(content);
+            this.random = random;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return content.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return content.read(b, off, Math.min(len, 1 + random.nextInt(100)));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.json.Json;
+import javax.json.JsonObject;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Language;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TypedLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.apache.clerezza.rdf.ontologies.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class JsonLdWriterTest {
+
+
+    public JsonLdWriterTest() {
+    }
+
+    @Test
+    public void roundtripResources() throws Exception {
+        final JsonObject context = Json.createReader(new StringReader(
+                "{\"schema\": \"http://schema.org/\", \"name\": \"http://schema.org/name\"}")).readObject();
+        for (String resource : ExampleDocuments.NAMES) {
+            final Graph graph = new SimpleGraph();
+            JsonLdParser.parse(getClass().getResourceAsStream(resource + ".json"), graph, new IRI("http://base/"));
+            Assert.assertEquals(resource, graph.getImmutableGraph(), roundtrip(graph, null).getImmutableGraph());
+            Assert.assertEquals(resource, graph.getImmutableGraph(), roundtrip(graph, context).getImmutableGraph());
+        }
+    }
+
+    @Test
+    public void compactWithContext() throws Exception {
+        final JsonObject context = Json.createReader(new StringReader("{"
+                + "\"ex\": \"http://example.org/\", "
+                + "\"xsd\": \"http://www.w3.org/2001/XMLSchema#\", "
+                + "\"name\": \"http://example.org/name\", "
+                + "\"knows\": {\"@id\": \"ex:knows\", \"@type\": \"@id\"}, "
+                + "\"age\": {\"@id\": \"ex:age\", \"@type\": \"xsd:integer\"}}")).readObject();
+        final IRI a = new IRI("http://example.org/a");
+        final IRI b = new IRI("http://example.org/b");
+        final BlankNode c = new BlankNode();
+        final Graph graph = new SimpleGraph();
+        graph.add(new TripleImpl(a, RDF.type, new IRI("http://example.org/Person")));
+        graph.add(new TripleImpl(a, new IRI("http://example.org/name"), new PlainLiteralImpl("A")));
+        graph.add(new TripleImpl(a, new IRI("http://example.org/name"), new PlainLiteralImpl("Ah", new Language("de"))));
+        graph.add(new TripleImpl(a, new IRI("http://example.org/knows"), b));
+        graph.add(new TripleImpl(a, new IRI("http://example.org/knows"), c));
+        graph.add(new TripleImpl(a, new IRI("http://example.org/age"),
+                new TypedLiteralImpl("42", new IRI("http://www.w3.org/2001/XMLSchema#integer"))));
+        graph.add(new TripleImpl(c, new IRI("http://example.org/other"),
+                new TypedLiteralImpl("1.5", new IRI("http://www.w3.org/2001/XMLSchema#decimal"))));
+        final StringWriter json = new StringWriter();
+        try (JsonLdWriter writer = new JsonLdWriter(json, context)) {
+            graph.filter(a, null, null).forEachRemaining(writer::add);
+            graph.filter(c, null, null).forEachRemaining(writer::add);
+        }
+        final String output = json.toString();
+        Assert.assertTrue(output, output.contains("\"@type\":\"ex:Person\""));
+        Assert.assertTrue(output, output.contains("\"knows\":\"http://example.org/b\""));
+        Assert.assertTrue(output, output.contains("\"age\":\"42\""));
+        Assert.assertTrue(output, output.contains("\"ex:other\":{\"@value\":\"1.5\",\"@type\":\"xsd:decimal\"}"));
+        final Graph parsed = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(output.getBytes("utf-8")), parsed, null);
+        Assert.assertEquals(graph.getImmutableGraph(), parsed.getImmutableGraph());
+    }
+
+    private static Graph roundtrip(Graph graph, JsonObject context) throws Exception {
+        final StringWriter json = new StringWriter();
+        try (JsonLdWriter writer = new JsonLdWriter(json, context)) {
+            final Set<BlankNodeOrIRI> subjects = new LinkedHashSet<>();
+            for (Triple triple : graph) {
+                subjects.add(triple.getSubject());
+            }
+            //grouped by subject
+            for (BlankNodeOrIRI subject : subjects) {
+                graph.filter(subject, null, null).forEachRemaining(writer::add);
+            }
+        }
+        final Graph result = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(json.toString().getBytes("utf-8")), result, null);
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import javax.json.Json;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Language;
+import org.apache.clerezza.commons.rdf.Literal;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.apache.clerezza.rdf.ontologies.RDF;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class LargeLiteralTest {
+
+    private static final String JSON = "{\"@context\": {\"ex\": \"http://example.org/\", "
+            + "\"link\": {\"@id\": \"http://example.org/vocabulary/link\", \"@type\": \"@id\"}}, "
+            + "\"@id\": \"http://example.org/a-subject-with-a-long-identifier\", "
+            + "\"@type\": [\"http://example.org/AClassWithALongName\", \"ex:Short\"], "
+            + "\"link\": \"http://example.org/a-linked-resource-with-a-long-identifier\", "
+            + "\"ex:text\": \"a literal longer than the threshold\", "
+            + "\"ex:label\": {\"@value\": \"a value object longer than the threshold\", \"@language\": \"en\"}}";
+    private static final IRI SUBJECT = new IRI("http://example.org/a-subject-with-a-long-identifier");
+
+    public LargeLiteralTest() {
+    }
+
+    @Test
+    public void onlyLiteralsAreReplaced() throws Exception {
+        final Graph graph = parse();
+        Assert.assertEquals(5, graph.size());
+        Assert.assertTrue(graph.contains(new TripleImpl(SUBJECT, RDF.type, new IRI("http://example.org/AClassWithALongName"))));
+        Assert.assertTrue(graph.contains(new TripleImpl(SUBJECT, new IRI("http://example.org/vocabulary/link"),
+                new IRI("http://example.org/a-linked-resource-with-a-long-identifier"))));
+        //compared by the LargeLiteral, the other way round needs the deleted content
+        Assert.assertTrue(getObject(graph, "http://example.org/text").equals(
+                new PlainLiteralImpl("a literal longer than the threshold")));
+        Assert.assertTrue(getObject(graph, "http://example.org/label").equals(
+                new PlainLiteralImpl("a value object longer than the threshold", new Language("en"))));
+    }
+
+    @Test
+    public void equalityAfterParse() throws Exception {
+        final Graph first = parse();
+        final Graph second = parse();
+        //the content of the literals has been deleted
+        Assert.assertTrue(first.containsAll(second));
+        final Literal text = getObject(first, "http://example.org/text");
+        Assert.assertEquals(new PlainLiteralImpl("a literal longer than the threshold").hashCode(), text.hashCode());
+        Assert.assertFalse(text.equals(new PlainLiteralImpl("a literal longer than the threshold!")));
+        Assert.assertFalse(text.equals(getObject(first, "http://example.org/label")));
+    }
+
+    @Test
+    public void hashAndDigestOfEncodedContent() throws Exception {
+        //escapes, two, three and four byte sequences, across the buffer of the digest
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("\"a\"\\\n\t\u00e9\u20ac\ud83d\ude00/\u0000 ").append(i);
+        }
+        final String json = "{\"@id\": \"http://example.org/s\", \"http://example.org/text\": "
+                + Json.createArrayBuilder().add(text.toString()).build().toString().replace("/", "\\/") + "}";
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(20);
+        final Graph result = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), (Triple triple) -> {
+            final Literal literal = (Literal) triple.getObject();
+            Assert.assertTrue(literal instanceof LargeLiteral);
+            //while the content can still be read
+            Assert.assertEquals(text.toString(), literal.getLexicalForm());
+            result.add(triple);
+        }, null, options);
+        final Literal literal = (Literal) result.iterator().next().getObject();
+        Assert.assertEquals(new PlainLiteralImpl(text.toString()).hashCode(), literal.hashCode());
+        Assert.assertTrue(literal.equals(new PlainLiteralImpl(text.toString())));
+        Assert.assertFalse(literal.equals(new PlainLiteralImpl(text.toString().replace('\u20ac', '$'))));
+    }
+
+    private static Graph parse() throws Exception {
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(20);
+        final Graph result = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(JSON.getBytes("utf-8")), result::add, null, options);
+        return result;
+    }
+
+    private static Literal getObject(Graph graph, String predicate) {
+        final Triple triple = graph.filter(SUBJECT, new IRI(predicate), null).next();
+        Assert.assertTrue(triple.getObject() instanceof LargeLiteral);
+        return (Literal) triple.getObject();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class NQuadsWriterTest {
+
+    private static final String DATASET = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+            + "{\"@id\": \"ex:g1\", \"ex:created\": \"today\", \"@graph\": ["
+            + "{\"@id\": \"ex:a\", \"ex:name\": \"A\", \"ex:log\": {\"@graph\": {\"@id\": \"ex:e\", \"ex:name\": \"E\"}}}]}, "
+            + "{\"@id\": \"ex:b\", \"ex:name\": \"B\"}]}";
+
+    public NQuadsWriterTest() {
+    }
+
+    @Test
+    public void nestedGraphs() throws Exception {
+        final List<BlankNodeOrIRI> graphNames = new ArrayList<>();
+        final List<Triple> triples = new ArrayList<>();
+        JsonLdParser.parse(new ByteArrayInputStream(DATASET.getBytes("utf-8")), (BlankNodeOrIRI graphName, Triple triple) -> {
+            graphNames.add(graphName);
+            triples.add(triple);
+        }, null);
+        final IRI g1 = new IRI("http://example.org/g1");
+        final IRI name = new IRI("http://example.org/name");
+        final IRI a = new IRI("http://example.org/a");
+        final IRI log = new IRI("http://example.org/log");
+        Assert.assertEquals(5, triples.size());
+        //quads are emitted in document order
+        Assert.assertEquals(new TripleImpl(g1, new IRI("http://example.org/created"), new PlainLiteralImpl("today")), triples.get(0));
+        Assert.assertNull(graphNames.get(0));
+        Assert.assertEquals(new TripleImpl(a, name, new PlainLiteralImpl("A")), triples.get(1));
+        Assert.assertEquals(g1, graphNames.get(1));
+        //the graph of a node object without @id is named by a blank node
+        Assert.assertEquals(new IRI("http://example.org/e"), triples.get(2).getSubject());
+        Assert.assertTrue(graphNames.get(2) instanceof BlankNode);
+        Assert.assertEquals(new TripleImpl(a, log, graphNames.get(2)), triples.get(3));
+        Assert.assertEquals(g1, graphNames.get(3));
+        Assert.assertEquals(new TripleImpl(new IRI("http://example.org/b"), name, new PlainLiteralImpl("B")), triples.get(4));
+        Assert.assertNull(graphNames.get(4));
+    }
+
+    @Test
+    public void unionForTripleSink() throws Exception {
+        final SimpleGraph graph = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(DATASET.getBytes("utf-8")), graph, null);
+        Assert.assertEquals(5, graph.size());
+        final SimpleGraph pipelined = new SimpleGraph();
+        JsonLdParser.parsePipelined(new ByteArrayInputStream(DATASET.getBytes("utf-8")), pipelined::add, null);
+        Assert.assertEquals(graph.getImmutableGraph(), pipelined.getImmutableGraph());
+    }
+
+    @Test
+    public void writeQuads() throws Exception {
+        final StringWriter out = new StringWriter();
+        try (NQuadsWriter writer = new NQuadsWriter(out)) {
+            JsonLdParser.parse(new ByteArrayInputStream(DATASET.getBytes("utf-8")), writer, null);
+        }
+        final List<String> lines = Arrays.asList(out.toString().split("\n"));
+        Assert.assertEquals(5, lines.size());
+        Assert.assertEquals("<http://example.org/g1> <http://example.org/created> \"today\" .", lines.get(0));
+        Assert.assertEquals("<http://example.org/a> <http://example.org/name> \"A\" <http://example.org/g1> .", lines.get(1));
+        Assert.assertEquals("<http://example.org/e> <http://example.org/name> \"E\" _:b1 .", lines.get(2));
+        Assert.assertEquals("<http://example.org/a> <http://example.org/log> _:b1 <http://example.org/g1> .", lines.get(3));
+    }
+
+    @Test
+    public void escapingDoesNotDependOnLiteralSize() throws Exception {
+        final String json = "{\"@id\": \"http://example.org/a\", "
+                + "\"http://example.org/short\": \"a \\\"b\\\"\\nc\", "
+                + "\"http://example.org/long\": \"a \\\"b\\\"\\nc                    \"}";
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(20);
+        final StringWriter out = new StringWriter();
+        try (NQuadsWriter writer = new NQuadsWriter(out)) {
+            JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), writer, null, options);
+        }
+        Assert.assertEquals("<http://example.org/a> <http://example.org/short> \"a \\\"b\\\"\\nc\" .\n"
+                + "<http://example.org/a> <http://example.org/long> \"a \\\"b\\\"\\nc                    \" .\n",
+                out.toString());
+        //the command line output uses the same serialization
+        final ByteArrayOutputStream nTriples = new ByteArrayOutputStream();
+        JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), nTriples, null);
+        Assert.assertEquals(out.toString(), nTriples.toString("utf-8"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class ParserEventsTest {
+
+    private static final String DOCUMENT = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+            + "{\"@id\": \"ex:a\", \"ex:name\": \"A\", \"ex:knows\": {\"@id\": \"ex:b\"}}, "
+            + "{\"@id\": \"ex:b\", \"ex:name\": \"B\"}]}";
+    //with characters of two, three and four bytes and a literal above the threshold
+    private static final String NON_ASCII_DOCUMENT = "{\"@context\": {\"ex\": \"http://example.org/\", \"z\u00e9\": \"ex:\"}, "
+            + "\"ex:title\": \"\u20ac\ud83d\ude00\", \"@graph\": ["
+            + "{\"@id\": \"ex:a\", \"ex:name\": \"Zo\u00eb \ud83d\ude00\", "
+            + "\"ex:text\": \"a long text with \u00e9\u00e9\u00e9 and \u20ac\u20ac and \ud83d\ude00\ud83d\ude00\"}, "
+            + "{\"@id\": \"ex:b\", \"ex:name\": \"\u00c4\"}]}";
+
+    public ParserEventsTest() {
+    }
+
+    @Test
+    public void recordedWhenEnabled() throws Exception {
+        Assume.assumeTrue(ParserEvents.AVAILABLE);
+        final File file = File.createTempFile("parser-events", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("com.zazuko.jsonld.ContextParse");
+                recording.enable("com.zazuko.jsonld.GraphElement");
+                recording.enable("com.zazuko.jsonld.SinkAdd").withThreshold(null);
+                recording.enable("com.zazuko.jsonld.InputRefill");
+                recording.start();
+                JsonLdParser.parse(new ByteArrayInputStream(DOCUMENT.getBytes("utf-8")), new SimpleGraph(), null);
+                recording.stop();
+                recording.dump(file.toPath());
+            }
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            final Map<String, Integer> counts = new HashMap<>();
+            final List<Long> offsets = new ArrayList<>();
+            long elementTriples = 0;
+            for (RecordedEvent event : events) {
+                counts.merge(event.getEventType().getName(), 1, Integer::sum);
+                if (event.getEventType().getName().equals("com.zazuko.jsonld.GraphElement")) {
+                    offsets.add(event.getLong("charOffset"));
+                    elementTriples += event.getLong("triples");
+                }
+            }
+            Assert.assertEquals(Integer.valueOf(1), counts.get("com.zazuko.jsonld.ContextParse"));
+            Assert.assertEquals(Integer.valueOf(2), counts.get("com.zazuko.jsonld.GraphElement"));
+            Assert.assertEquals(Integer.valueOf(3), counts.get("com.zazuko.jsonld.SinkAdd"));
+            Assert.assertEquals(3, elementTriples);
+            Assert.assertEquals(Arrays.asList((long) DOCUMENT.indexOf("{\"@id\": \"ex:a\""),
+                    (long) DOCUMENT.indexOf("{\"@id\": \"ex:b\", \"ex:name")), offsets);
+            Assert.assertNotNull(counts.get("com.zazuko.jsonld.InputRefill"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void offsetsInCharacters() throws Exception {
+        Assume.assumeTrue(ParserEvents.AVAILABLE);
+        final byte[] bytes = NON_ASCII_DOCUMENT.getBytes("utf-8");
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(20);
+        final List<Long> expected = Arrays.asList((long) NON_ASCII_DOCUMENT.indexOf("{\"@id\": \"ex:a\""),
+                (long) NON_ASCII_DOCUMENT.indexOf("{\"@id\": \"ex:b\""));
+        Assert.assertEquals(expected, recordElementOffsets(() -> JsonLdParser.parse(
+                new ByteArrayInputStream(bytes), triple -> {
+                }, null, options)));
+        Assert.assertEquals(expected, recordElementOffsets(() -> JsonLdParser.parse(
+                new ByteArrayInputStream(bytes), new SimpleGraph(), null)));
+        //the elements and the other members of the root object
+        final List<Long> recovering = recordElementOffsets(() -> JsonLdParser.parseRecovering(
+                new ByteArrayInputStream(bytes), triple -> {
+                }, null, options, (offset, ordinal, cause) -> {
+                    throw new AssertionError(cause);
+                }));
+        Assert.assertEquals(expected, recovering.subList(0, 2));
+        Assert.assertEquals(Long.valueOf(NON_ASCII_DOCUMENT.indexOf("\"ex:title\"")), recovering.get(2));
+    }
+
+    private static List<Long> recordElementOffsets(Runnable parse) throws Exception {
+        final File file = File.createTempFile("parser-events", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("com.zazuko.jsonld.GraphElement");
+                recording.start();
+                parse.run();
+                recording.stop();
+                recording.dump(file.toPath());
+            }
+            final List<Long> result = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals("com.zazuko.jsonld.GraphElement")) {
+                    result.add(event.getLong("charOffset"));
+                }
+            }
+            return result;
+        } finally {
+            file.delete();
+        }
+    }
+}
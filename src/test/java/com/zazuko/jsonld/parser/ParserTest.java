@@ -28,12 +28,22 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.json.Json;
 import org.apache.clerezza.commons.rdf.Graph;
 import org.apache.clerezza.commons.rdf.IRI;
 import org.apache.clerezza.commons.rdf.ImmutableGraph;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
 import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
 import org.apache.clerezza.rdf.core.serializedform.Parser;
 import org.apache.clerezza.rdf.core.serializedform.SupportedFormat;
+import org.apache.clerezza.rdf.ontologies.RDF;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -87,6 +97,30 @@ public class ParserTest {
         final Parser parser = Parser.getInstance();
         final ImmutableGraph n3output = parser.parse(inN3Output, SupportedFormat.N_TRIPLE);
         Assert.assertEquals(expected, n3output);
+        //And parse pipelined
+        final Graph pipelinedGraph = new SimpleGraph();
+        final InputStream inJsonLd3 = ParserTest.class.getResourceAsStream(fileName);
+        JsonLdParser.parsePipelined(inJsonLd3, pipelinedGraph::add, base);
+        Assert.assertEquals(expected, pipelinedGraph.getImmutableGraph());
+        //And parse to turtle
+        final ByteArrayOutputStream turtleBaos = new ByteArrayOutputStream();
+        final InputStream inJsonLd4 = ParserTest.class.getResourceAsStream(fileName);
+        try (TurtleWriter turtleWriter = new TurtleWriter(turtleBaos)) {
+            JsonLdParser.parse(inJsonLd4, turtleWriter, base);
+        }
+        final InputStream inTurtleOutput = new ByteArrayInputStream(turtleBaos.toByteArray());
+        final ImmutableGraph turtleOutput = parser.parse(inTurtleOutput, SupportedFormat.TURTLE);
+        Assert.assertEquals(expected, turtleOutput);
+        //And write as JSON-LD and parse again
+        final StringWriter jsonLdOutput = new StringWriter();
+        try (JsonLdWriter jsonLdWriter = new JsonLdWriter(jsonLdOutput, null)) {
+            for (Triple triple : graph) {
+                jsonLdWriter.add(triple);
+            }
+        }
+        final Graph rewrittenGraph = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(jsonLdOutput.toString().getBytes("utf-8")), rewrittenGraph, null);
+        Assert.assertEquals(expected, rewrittenGraph.getImmutableGraph());
     }
     
     @Test
@@ -144,4 +178,159 @@ public class ParserTest {
         testFromResource("context-type");
     }
     
+    @Test
+    public void projection() throws Exception {
+        final IRI name = new IRI("http://schema.org/name");
+        final IRI person = new IRI("http://schema.org/Person");
+        final ParserOptions options = new ParserOptions();
+        options.setProjection(new Projection(Collections.singleton(name), Collections.singleton(person)));
+        final Graph graph = new SimpleGraph();
+        JsonLdParser.parse(ParserTest.class.getResourceAsStream("knows-circle.json"), graph::add, null, options);
+        //the name of the person nested in the unwanted knows property is skipped
+        Assert.assertEquals(2, graph.size());
+        Assert.assertTrue(graph.filter(null, name, new PlainLiteralImpl("Jane Doe")).hasNext());
+        Assert.assertTrue(graph.filter(null, RDF.type, person).hasNext());
+    }
+    
+    @Test
+    public void lateIdAndContext() throws Exception {
+        final String ordered = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+                + "{\"@id\": \"ex:a\", \"ex:name\": \"A\", \"ex:knows\": {\"@id\": \"ex:b\", \"ex:name\": \"B\"}}]}";
+        final String late = "{\"@graph\": ["
+                + "{\"ex:name\": \"A\", \"ex:knows\": {\"ex:name\": \"B\", \"@id\": \"ex:b\"}, \"@id\": \"ex:a\"}], "
+                + "\"@context\": {\"ex\": \"http://example.org/\"}}";
+        final Graph expected = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(ordered.getBytes("utf-8")), expected, null);
+        final ParserOptions options = new ParserOptions();
+        options.setLookAheadLimit(100);
+        final Graph graph = new SimpleGraph();
+        JsonLdParser.parse(new ByteArrayInputStream(late.getBytes("utf-8")), graph::add, null, options);
+        Assert.assertEquals(expected.getImmutableGraph(), graph.getImmutableGraph());
+        try {
+            JsonLdParser.parse(new ByteArrayInputStream(late.getBytes("utf-8")), new SimpleGraph(), null);
+            Assert.fail("late @id without look-ahead should fail");
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("look-ahead"));
+        }
+    }
+    
+    @Test
+    public void localContextEndsWithObject() throws Exception {
+        //the nested object ends right after its @id
+        final String json = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@id\": \"ex:a\", "
+                + "\"ex:knows\": {\"@context\": {\"ex\": \"http://other.org/\"}, \"@id\": \"ex:b\"}, "
+                + "\"ex:name\": \"A\"}";
+        for (int lookAheadLimit : new int[]{0, 100}) {
+            final ParserOptions options = new ParserOptions();
+            options.setLookAheadLimit(lookAheadLimit);
+            final Graph graph = new SimpleGraph();
+            JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), graph::add, null, options);
+            Assert.assertEquals(2, graph.size());
+            Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/a"),
+                    new IRI("http://example.org/knows"), new IRI("http://other.org/b"))));
+            Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/a"),
+                    new IRI("http://example.org/name"), new PlainLiteralImpl("A"))));
+        }
+    }
+
+    @Test
+    public void recovery() throws Exception {
+        final String json = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+                + "{\"@id\": \"ex:a\", \"ex:name\": \"a\"}, "
+                + "{\"@id\": \"ex:b\", \"ex:name\": \"b\", \"ex:size\": 5}, "
+                + "{\"@id\": \"ex:c\", \"ex:name\": \"c\"}]}";
+        final Graph graph = new SimpleGraph();
+        final List<Integer> failedOrdinals = new ArrayList<>();
+        final List<Long> failedOffsets = new ArrayList<>();
+        JsonLdParser.parseRecovering(new ByteArrayInputStream(json.getBytes("utf-8")), graph::add, null,
+                (long offset, int ordinal, RuntimeException exception) -> {
+                    failedOrdinals.add(ordinal);
+                    failedOffsets.add(offset);
+                });
+        Assert.assertEquals(Collections.singletonList(1), failedOrdinals);
+        Assert.assertEquals(Collections.singletonList((long) json.indexOf("{\"@id\": \"ex:b\"")), failedOffsets);
+        //nothing of the failed element is added
+        Assert.assertEquals(2, graph.size());
+        Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/c"),
+                new IRI("http://example.org/name"), new PlainLiteralImpl("c"))));
+    }
+    
+    @Test
+    public void recoveryWithContextAfterGraph() throws Exception {
+        final String json = "{\"@graph\": ["
+                + "{\"@id\": \"ex:a\", \"ex:name\": \"a\"}, "
+                + "{\"@id\": \"ex:b\", \"ex:size\": 5}], "
+                + "\"@id\": \"ex:root\", \"ex:name\": \"root\", "
+                + "\"@context\": {\"ex\": \"http://example.org/\"}}";
+        final Graph graph = new SimpleGraph();
+        final List<Integer> failedOrdinals = new ArrayList<>();
+        JsonLdParser.parseRecovering(new ByteArrayInputStream(json.getBytes("utf-8")), graph::add, null,
+                (long offset, int ordinal, RuntimeException exception) -> {
+                    failedOrdinals.add(ordinal);
+                });
+        Assert.assertEquals(Collections.singletonList(1), failedOrdinals);
+        //the elements are parsed with the context following them
+        Assert.assertEquals(2, graph.size());
+        Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/a"),
+                new IRI("http://example.org/name"), new PlainLiteralImpl("a"))));
+        Assert.assertTrue(graph.contains(new TripleImpl(new IRI("http://example.org/root"),
+                new IRI("http://example.org/name"), new PlainLiteralImpl("root"))));
+    }
+
+    @Test
+    public void recoveryWithLargeLiteralsAndLocalContexts() throws Exception {
+        final String json = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+                + "{\"@context\": {\"good\": \"http://example.org/good#\"}, \"@id\": \"ex:a\", "
+                + "\"good:text\": \"a text longer than the threshold\"}, "
+                + "{\"@context\": {\"bad\": \"http://example.org/bad#\"}, \"@id\": \"ex:b\", \"ex:size\": 5}]}";
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(10);
+        final List<String> prefixes = new ArrayList<>();
+        final List<Triple> triples = new ArrayList<>();
+        final List<Long> failedOffsets = new ArrayList<>();
+        JsonLdParser.parseRecovering(new ByteArrayInputStream(json.getBytes("utf-8")), new TripleSink() {
+            @Override
+            public void add(Triple triple) {
+                triples.add(triple);
+            }
+
+            @Override
+            public void addPrefix(String prefix, IRI namespace) {
+                prefixes.add(prefix);
+            }
+        }, null, options, (long offset, int ordinal, RuntimeException exception) -> failedOffsets.add(offset));
+        //offsets in the document, not in the one with the literal replaced
+        Assert.assertEquals(Collections.singletonList((long) json.indexOf("{\"@context\": {\"bad\"")), failedOffsets);
+        //the prefixes of the failed element are dropped with its triples
+        Assert.assertEquals(Arrays.asList("ex", "good"), prefixes);
+        Assert.assertEquals(1, triples.size());
+    }
+
+    @Test
+    public void largeLiteral() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append(" \"\u00e9\"\n");
+        }
+        final String json = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@id\": \"ex:s\", "
+                + "\"ex:text\": " + Json.createArrayBuilder().add(text.toString()).build().toString()
+                + ", \"ex:short\": \"short\"}";
+        final ParserOptions options = new ParserOptions();
+        options.setLargeLiteralThreshold(1024);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (TurtleWriter turtleWriter = new TurtleWriter(baos)) {
+            JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), (Triple triple) -> {
+                Assert.assertEquals(triple.getPredicate().getUnicodeString().endsWith("text"),
+                        triple.getObject() instanceof LargeLiteral);
+                turtleWriter.add(triple);
+            }, null, options);
+        }
+        final ImmutableGraph result = Parser.getInstance().parse(
+                new ByteArrayInputStream(baos.toByteArray()), SupportedFormat.TURTLE);
+        final IRI subject = new IRI("http://example.org/s");
+        Assert.assertEquals(2, result.size());
+        Assert.assertTrue(result.contains(new TripleImpl(subject, new IRI("http://example.org/text"), new PlainLiteralImpl(text.toString()))));
+        Assert.assertTrue(result.contains(new TripleImpl(subject, new IRI("http://example.org/short"), new PlainLiteralImpl("short"))));
+    }
+    
 }
@@ -0,0 +1,320 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.Json;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.Triple;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class PipelineTest {
+
+    //more than batch size times queue size of both pipeline stages
+    private static final int COUNT = 200000;
+
+    public PipelineTest() {
+    }
+
+    @Test
+    public void ringBufferWrapsAround() {
+        final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4);
+        int next = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(buffer.offer(round * 3 + i));
+            }
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(Integer.valueOf(next++), buffer.poll());
+            }
+            Assert.assertNull(buffer.poll());
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+    }
+
+    @Test(timeout = 60000)
+    public void jsonEventsBeyondQueueSize() throws Exception {
+        final byte[] json = createArray(COUNT);
+        final JsonParser expected = Json.createParser(new ByteArrayInputStream(json));
+        final JsonParser pipelined = new PipelinedJsonParser(Json.createParser(new ByteArrayInputStream(json)));
+        int events = 0;
+        while (expected.hasNext()) {
+            Assert.assertTrue(pipelined.hasNext());
+            final Event event = expected.next();
+            Assert.assertEquals(event, pipelined.next());
+            if (event == Event.VALUE_STRING) {
+                Assert.assertEquals(expected.getString(), pipelined.getString());
+            }
+            events++;
+        }
+        Assert.assertFalse(pipelined.hasNext());
+        Assert.assertEquals(COUNT + 2, events);
+        pipelined.close();
+    }
+
+    @Test(timeout = 60000)
+    public void locationsOfEvents() throws Exception {
+        final byte[] json = createGraph(COUNT / 100);
+        final JsonParser expected = Json.createParser(new ByteArrayInputStream(json));
+        final JsonParser pipelined = new PipelinedJsonParser(Json.createParser(new ByteArrayInputStream(json)));
+        while (expected.hasNext()) {
+            expected.next();
+            pipelined.next();
+            final JsonLocation expectedLocation = expected.getLocation();
+            final JsonLocation location = pipelined.getLocation();
+            Assert.assertEquals(expectedLocation.getStreamOffset(), location.getStreamOffset());
+            Assert.assertEquals(expectedLocation.getLineNumber(), location.getLineNumber());
+            Assert.assertEquals(expectedLocation.getColumnNumber(), location.getColumnNumber());
+        }
+        pipelined.close();
+    }
+
+    @Test(timeout = 60000)
+    public void parseClosesStreamAndEndsThreads() throws Exception {
+        final byte[] json = createGraph(COUNT);
+        final CountDownLatch closed = new CountDownLatch(1);
+        //like standard input the stream blocks after the document instead of ending
+        final InputStream in = new InputStream() {
+            private final InputStream content = new ByteArrayInputStream(json);
+
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int read = content.read(b, off, len);
+                if (read != -1) {
+                    return read;
+                }
+                try {
+                    closed.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return -1;
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        };
+        final AtomicInteger count = new AtomicInteger();
+        JsonLdParser.parsePipelined(in, (Triple triple) -> {
+            count.incrementAndGet();
+        }, null);
+        Assert.assertEquals(COUNT, count.get());
+        Assert.assertEquals(0, closed.getCount());
+        assertNoPipelineThreads();
+    }
+
+    @Test(timeout = 60000)
+    public void triplesAndPrefixesInOrder() {
+        final List<Object> received = new ArrayList<>();
+        final PipelinedQuadSink sink = new PipelinedQuadSink(new QuadSink() {
+            @Override
+            public void add(BlankNodeOrIRI graphName, Triple triple) {
+                received.add(triple);
+            }
+
+            @Override
+            public void addPrefix(String prefix, IRI namespace) {
+                received.add(prefix);
+            }
+        });
+        final List<Object> sent = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            if (i % 1000 == 0) {
+                sink.addPrefix("p" + i, new IRI("http://example.org/" + i + "/"));
+                sent.add("p" + i);
+            }
+            final Triple triple = createTriple(i);
+            sink.add(null, triple);
+            sent.add(triple);
+        }
+        sink.finish();
+        Assert.assertEquals(sent, received);
+    }
+
+    @Test(timeout = 60000)
+    public void sinkErrorEndsParse() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        try {
+            JsonLdParser.parsePipelined(new ByteArrayInputStream(createGraph(COUNT)), (Triple triple) -> {
+                if (count.incrementAndGet() == COUNT / 2) {
+                    throw new StackOverflowError("sink failed");
+                }
+            }, null);
+            Assert.fail("the error of the sink should be thrown");
+        } catch (StackOverflowError ex) {
+            Assert.assertEquals("sink failed", ex.getMessage());
+        }
+        assertNoPipelineThreads();
+    }
+
+    @Test(timeout = 60000)
+    public void tokenizerErrorEndsParse() throws Exception {
+        final JsonParser source = Json.createParser(new ByteArrayInputStream(createArray(COUNT)));
+        final PipelinedJsonParser pipelined = new PipelinedJsonParser(new FailingJsonParser(source, COUNT / 2));
+        int events = 0;
+        try {
+            while (pipelined.hasNext()) {
+                pipelined.next();
+                events++;
+            }
+            Assert.fail("the error of the tokenizer should be thrown");
+        } catch (OutOfMemoryError ex) {
+            Assert.assertEquals("tokenizer failed", ex.getMessage());
+        }
+        Assert.assertTrue(events <= COUNT / 2);
+        pipelined.close();
+        assertNoPipelineThreads();
+    }
+
+    @Test(timeout = 60000)
+    public void abortEndsSinkThread() throws Exception {
+        final PipelinedQuadSink sink = new PipelinedQuadSink((graphName, triple) -> {
+        });
+        for (int i = 0; i < COUNT; i++) {
+            sink.add(null, createTriple(i));
+        }
+        sink.abort();
+        assertNoPipelineThreads();
+    }
+
+    private static void assertNoPipelineThreads() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            Assert.assertFalse(thread.getName(), thread.getName().startsWith("jsonld-") && thread.isAlive());
+        }
+    }
+
+    private static Triple createTriple(int i) {
+        return new TripleImpl(new IRI("http://example.org/" + i), new IRI("http://example.org/value"),
+                new PlainLiteralImpl(Integer.toString(i)));
+    }
+
+    private static byte[] createArray(int count) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(i).append('"');
+        }
+        return json.append(']').toString().getBytes(Charset.forName("utf-8"));
+    }
+
+    private static byte[] createGraph(int count) {
+        final StringBuilder json = new StringBuilder("{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": [");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"@id\": \"ex:").append(i).append("\", \"ex:value\": \"")
+                    .append(i).append("\"}");
+        }
+        return json.append("]}").toString().getBytes(Charset.forName("utf-8"));
+    }
+
+    /**
+     * Throws an Error after a number of events.
+     */
+    private static class FailingJsonParser implements JsonParser {
+
+        private final JsonParser source;
+        private int remaining;
+
+        FailingJsonParser(JsonParser source, int events) {
+            this.source = source;
+            this.remaining = events;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return source.hasNext();
+        }
+
+        @Override
+        public Event next() {
+            if (remaining-- == 0) {
+                throw new OutOfMemoryError("tokenizer failed");
+            }
+            return source.next();
+        }
+
+        @Override
+        public String getString() {
+            return source.getString();
+        }
+
+        @Override
+        public boolean isIntegralNumber() {
+            return source.isIntegralNumber();
+        }
+
+        @Override
+        public int getInt() {
+            return source.getInt();
+        }
+
+        @Override
+        public long getLong() {
+            return source.getLong();
+        }
+
+        @Override
+        public BigDecimal getBigDecimal() {
+            return source.getBigDecimal();
+        }
+
+        @Override
+        public JsonLocation getLocation() {
+            return source.getLocation();
+        }
+
+        @Override
+        public void close() {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks that the parser scales linearly on generated documents.
+ * 
+ * The size of the documents is set with the system property 
+ * jsonld.scaling.nodes, the number of top-level nodes of the smaller 
+ * document, and jsonld.scaling.listLength, the length of the long list.
+ * 
+ * The timing and heap measurements depend on the machine and on the garbage 
+ * collector honouring System.gc(), they only run in the benchmark profile.
+ *
+ * @author user
+ */
+public class ScalingTest {
+
+    private static final int NODES = Integer.getInteger("jsonld.scaling.nodes", 10000);
+    private static final int LIST_LENGTH = Integer.getInteger("jsonld.scaling.listLength", 1000000);
+    private static final int SIZE_FACTOR = 8;
+
+    public ScalingTest() {
+    }
+
+    @Test
+    public void generatorIsDeterministic() throws IOException {
+        final DocumentGenerator generator = new DocumentGenerator(42);
+        generator.setNodeCount(500);
+        try (InputStream first = generator.openStream(); InputStream second = generator.openStream()) {
+            int b;
+            do {
+                b = first.read();
+                Assert.assertEquals(b, second.read());
+            } while (b != -1);
+        }
+    }
+
+    @Test
+    public void throughputIsLinear() {
+        assumeBenchmark();
+        final DocumentGenerator small = createGenerator(NODES);
+        final DocumentGenerator large = createGenerator(NODES * SIZE_FACTOR);
+        //warm up
+        parse(small);
+        parse(small);
+        final long smallStart = System.nanoTime();
+        final long smallTriples = parse(small);
+        final double smallNanosPerTriple = (double) (System.nanoTime() - smallStart) / smallTriples;
+        final long largeStart = System.nanoTime();
+        final long largeTriples = parse(large);
+        final double largeNanosPerTriple = (double) (System.nanoTime() - largeStart) / largeTriples;
+        Assert.assertEquals(large.getTripleCount(), largeTriples);
+        Assert.assertTrue("Time per triple grew from " + Math.round(smallNanosPerTriple) + "ns to "
+                + Math.round(largeNanosPerTriple) + "ns", largeNanosPerTriple < smallNanosPerTriple * 2);
+    }
+
+    @Test
+    public void memoryIsFlat() {
+        assumeBenchmark();
+        final DocumentGenerator generator = createGenerator(NODES * SIZE_FACTOR);
+        final long tripleCount = generator.getTripleCount();
+        final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        final long[] usedHeap = new long[2];
+        final long[] count = {0};
+        JsonLdParser.parse(generator.openStream(), triple -> {
+            count[0]++;
+            //measure the retained heap after a tenth and after nine tenths of the document
+            if (count[0] == tripleCount / 10 || count[0] == tripleCount * 9 / 10) {
+                System.gc();
+                usedHeap[count[0] == tripleCount / 10 ? 0 : 1] = memoryMXBean.getHeapMemoryUsage().getUsed();
+            }
+        }, null);
+        Assert.assertEquals(tripleCount, count[0]);
+        final long growth = usedHeap[1] - usedHeap[0];
+        Assert.assertTrue("Heap grew by " + (growth >> 10) + "KB while parsing", growth < 8 * 1024 * 1024);
+    }
+
+    @Test
+    public void longList() {
+        final DocumentGenerator generator = new DocumentGenerator(1);
+        generator.setNodeCount(1);
+        generator.setListLength(LIST_LENGTH);
+        Assert.assertEquals(generator.getTripleCount(), parse(generator));
+    }
+
+    @Test
+    public void largeContext() {
+        final DocumentGenerator generator = createGenerator(NODES);
+        generator.setContextSize(10000);
+        Assert.assertEquals(generator.getTripleCount(), parse(generator));
+    }
+
+    static void assumeBenchmark() {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("jsonld.benchmark"));
+    }
+
+    private static DocumentGenerator createGenerator(int nodeCount) {
+        final DocumentGenerator generator = new DocumentGenerator(nodeCount);
+        generator.setNodeCount(nodeCount);
+        generator.setNestingDepth(3);
+        generator.setListLength(10);
+        generator.setBlankNodeRatio(0.3);
+        return generator;
+    }
+
+    private static long parse(DocumentGenerator generator) {
+        final long[] count = {0};
+        JsonLdParser.parse(generator.openStream(), triple -> count[0]++, null);
+        return count[0];
+    }
+}
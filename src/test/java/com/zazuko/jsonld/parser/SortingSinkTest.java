@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.clerezza.commons.rdf.BlankNode;
+import org.apache.clerezza.commons.rdf.BlankNodeOrIRI;
+import org.apache.clerezza.commons.rdf.Graph;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.impl.utils.PlainLiteralImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.simple.SimpleGraph;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class SortingSinkTest {
+
+    public SortingSinkTest() {
+    }
+
+    @Test
+    public void spilledRunsAreMerged() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("sorting-sink").toFile();
+        try {
+            final ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+            final Graph graph = new SimpleGraph();
+            try (SortingSink sink = new SortingSink(spilled, 64 * 1024, tempDirectory)) {
+                addTriples(5000, triple -> {
+                    graph.add(triple);
+                    sink.add(triple);
+                    //every triple twice, the duplicates are removed
+                    sink.add(triple);
+                });
+                Assert.assertTrue("runs should have been spilled", tempDirectory.list().length > 1);
+            }
+            Assert.assertEquals(0, tempDirectory.list().length);
+            assertSorted(spilled, graph.size());
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    @Test
+    public void runsAreMergedInPasses() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("sorting-sink").toFile();
+        try {
+            final ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+            final Graph graph = new SimpleGraph();
+            //tiny runs, merged three at a time
+            try (SortingSink sink = new SortingSink(spilled, 4 * 1024, tempDirectory, 3)) {
+                addTriples(2000, triple -> {
+                    graph.add(triple);
+                    sink.add(triple);
+                });
+                Assert.assertTrue("runs should have been spilled", tempDirectory.list().length > 9);
+            }
+            Assert.assertEquals(0, tempDirectory.list().length);
+            assertSorted(spilled, graph.size());
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    @Test
+    public void largeRunsAreSortedInParallel() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("sorting-sink").toFile();
+        try {
+            final ByteArrayOutputStream spilled = new ByteArrayOutputStream();
+            final Graph graph = new SimpleGraph();
+            //runs of about 20000 lines, Arrays.parallelSort only splits arrays above 8192 elements
+            try (SortingSink sink = new SortingSink(spilled, 4 * 1024 * 1024, tempDirectory)) {
+                addTriples(60000, triple -> {
+                    graph.add(triple);
+                    sink.add(triple);
+                });
+                Assert.assertTrue("runs should have been spilled", tempDirectory.list().length > 1);
+            }
+            Assert.assertEquals(0, tempDirectory.list().length);
+            assertSorted(spilled, graph.size());
+        } finally {
+            tempDirectory.delete();
+        }
+    }
+
+    @Test
+    public void singleRun() throws Exception {
+        final String json = "{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": ["
+                + "{\"@id\": \"ex:b\", \"ex:name\": \"B\", \"ex:knows\": {\"@id\": \"ex:a\", \"ex:name\": \"A\"}}, "
+                + "{\"@id\": \"ex:a\", \"ex:name\": \"A\"}]}";
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SortingSink sink = new SortingSink(out)) {
+            JsonLdParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), sink, null);
+        }
+        Assert.assertEquals("<http://example.org/a> <http://example.org/name> \"A\" .\n"
+                + "<http://example.org/b> <http://example.org/knows> <http://example.org/a> .\n"
+                + "<http://example.org/b> <http://example.org/name> \"B\" .\n", out.toString("utf-8"));
+    }
+
+    /**
+     * Adds triples with subjects in scrambled order, some of them blank nodes.
+     */
+    private static void addTriples(int count, TripleSink sink) {
+        final BlankNode[] blankNodes = new BlankNode[count / 10];
+        for (int i = 0; i < blankNodes.length; i++) {
+            blankNodes[i] = new BlankNode();
+        }
+        for (int i = 0; i < count; i++) {
+            final int subject = (i * 7919) % count;
+            final BlankNodeOrIRI node = subject % 10 == 0 ? blankNodes[subject / 10]
+                    : new IRI("http://example.org/s" + subject);
+            sink.add(new TripleImpl(node, new IRI("http://example.org/p" + (i % 3)), new PlainLiteralImpl("value " + i)));
+        }
+    }
+
+    private static void assertSorted(ByteArrayOutputStream out, int expectedLines) throws Exception {
+        final String[] lines = out.toString("utf-8").split("\n");
+        Assert.assertEquals(expectedLines, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            Assert.assertTrue(lines[i - 1] + " before " + lines[i], lines[i - 1].compareTo(lines[i]) < 0);
+        }
+    }
+}
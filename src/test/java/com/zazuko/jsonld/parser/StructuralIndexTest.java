@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class StructuralIndexTest {
+
+    private static final byte[] ALPHABET = "ab \"\\{}[]:,\n\t\u00ff".getBytes();
+    private static final String STRING_END_CHARS;
+
+    static {
+        final StringBuilder chars = new StringBuilder("\"\\");
+        for (char c = 0; c < 0x20; c++) {
+            chars.append(c);
+        }
+        STRING_END_CHARS = chars.toString();
+    }
+
+    public StructuralIndexTest() {
+    }
+
+    @Test
+    public void matchesScalarSearch() {
+        final Random random = new Random(42);
+        final byte[] buffer = new byte[1000];
+        final StructuralIndex index = new StructuralIndex(buffer);
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < buffer.length; i++) {
+                //mostly plain characters, including bytes with the high bit set
+                buffer[i] = random.nextInt(8) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)]
+                        : (byte) random.nextInt(256);
+            }
+            index.invalidate();
+            final int limit = random.nextInt(buffer.length + 1);
+            for (int pos = 0; pos <= limit; pos++) {
+                Assert.assertEquals(scan(buffer, pos, limit, "\"\\"), index.nextStringChar(pos, limit));
+                Assert.assertEquals(scan(buffer, pos, limit, "\"{}[]"), index.nextContainerChar(pos, limit));
+                Assert.assertEquals(scan(buffer, pos, limit, STRING_END_CHARS), index.nextStringEndChar(pos, limit));
+            }
+        }
+    }
+
+    @Test
+    public void toBits() {
+        for (int i = 0; i < 256; i++) {
+            long highBits = 0;
+            for (int b = 0; b < 8; b++) {
+                if ((i & (1 << b)) != 0) {
+                    highBits |= 0x80L << (8 * b);
+                }
+            }
+            Assert.assertEquals(i, StructuralIndex.toBits(highBits));
+        }
+    }
+
+    /**
+     * Compares skipping long strings with the index and byte by byte, and 
+     * reports the throughput of GraphScanner.
+     */
+    @Test
+    public void fasterThanScalarSearch() throws Exception {
+        ScalingTest.assumeBenchmark();
+        final byte[] document = createDocument(20000);
+        final byte[] buffer = Arrays.copyOf(document, 65536);
+        final StructuralIndex index = new StructuralIndex(buffer);
+        long indexNanos = Long.MAX_VALUE;
+        long scalarNanos = Long.MAX_VALUE;
+        int indexStops = 0;
+        int scalarStops = 0;
+        for (int run = 0; run < 100; run++) {
+            long start = System.nanoTime();
+            index.invalidate();
+            indexStops = 0;
+            for (int pos = index.nextStringChar(0, buffer.length); pos < buffer.length;
+                    pos = index.nextStringChar(pos + 1, buffer.length)) {
+                indexStops++;
+            }
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            scalarStops = 0;
+            for (int pos = 0; pos < buffer.length; pos++) {
+                if (buffer[pos] == '"' || buffer[pos] == '\\') {
+                    scalarStops++;
+                }
+            }
+            scalarNanos = Math.min(scalarNanos, System.nanoTime() - start);
+        }
+        Assert.assertEquals(scalarStops, indexStops);
+        long scanNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            final long start = System.nanoTime();
+            new GraphScanner(new ByteArrayInputStream(document), false).scan(new GraphScanner.Handler() {
+                @Override
+                public void context(byte[] json) {
+                }
+
+                @Override
+                public void element(int ordinal, long offset, long length, String id, byte[] json) {
+                }
+            });
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+        }
+        System.out.println("Index: " + mbPerSecond(buffer.length, indexNanos) + "MB/s, byte by byte: "
+                + mbPerSecond(buffer.length, scalarNanos) + "MB/s, GraphScanner: "
+                + mbPerSecond(document.length, scanNanos) + "MB/s");
+        Assert.assertTrue("the index should be faster than searching byte by byte", indexNanos < scalarNanos);
+    }
+
+    /**
+     * A @graph of elements with strings of 0.5 to 2.5KB.
+     */
+    static byte[] createDocument(int elements) throws Exception {
+        final Random random = new Random(7);
+        final StringBuilder result = new StringBuilder("{\"@context\": {\"ex\": \"http://example.org/\"}, \"@graph\": [");
+        for (int i = 0; i < elements; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append("{\"@id\": \"ex:n").append(i).append("\", \"ex:text\": \"");
+            final int length = 512 + random.nextInt(2048);
+            for (int j = 0; j < length; j++) {
+                result.append((char) ('a' + random.nextInt(26)));
+            }
+            result.append("\", \"ex:next\": {\"@id\": \"ex:n").append(i + 1).append("\"}}");
+        }
+        return result.append("]}").toString().getBytes("utf-8");
+    }
+
+    private static long mbPerSecond(long bytes, long nanos) {
+        return bytes * 1000 / nanos;
+    }
+
+    private static int scan(byte[] buffer, int pos, int limit, String chars) {
+        for (int i = pos; i < limit; i++) {
+            if (chars.indexOf(buffer[i]) != -1) {
+                return i;
+            }
+        }
+        return limit;
+    }
+}
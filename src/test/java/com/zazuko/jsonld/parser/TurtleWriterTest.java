@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Zazuko GmbH.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.zazuko.jsonld.parser;
+
+import java.io.StringWriter;
+import org.apache.clerezza.commons.rdf.IRI;
+import org.apache.clerezza.commons.rdf.impl.utils.TripleImpl;
+import org.apache.clerezza.commons.rdf.impl.utils.TypedLiteralImpl;
+import org.apache.clerezza.rdf.ontologies.XSD;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author user
+ */
+public class TurtleWriterTest {
+
+    public TurtleWriterTest() {
+    }
+
+    @Test
+    public void datatypeIsAbbreviated() throws Exception {
+        final StringWriter out = new StringWriter();
+        try (TurtleWriter writer = new TurtleWriter(out)) {
+            writer.addPrefix("ex", new IRI("http://example.org/"));
+            writer.addPrefix("xsd", new IRI("http://www.w3.org/2001/XMLSchema#"));
+            writer.add(new TripleImpl(new IRI("http://example.org/s"), new IRI("http://example.org/p"),
+                    new TypedLiteralImpl("2", XSD.int_)));
+        }
+        Assert.assertEquals("@prefix ex: <http://example.org/> .\n"
+                + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n"
+                + "ex:s ex:p \"2\"^^xsd:int .\n", out.toString());
+    }
+
+    @Test
+    public void redefinedPrefixKeepsOtherPrefixOfNamespace() throws Exception {
+        final StringWriter out = new StringWriter();
+        try (TurtleWriter writer = new TurtleWriter(out)) {
+            writer.addPrefix("a", new IRI("http://example.org/"));
+            writer.addPrefix("b", new IRI("http://example.org/"));
+            writer.addPrefix("a", new IRI("http://example.org/other/"));
+            writer.add(new TripleImpl(new IRI("http://example.org/s"), new IRI("http://example.org/p"),
+                    new IRI("http://example.org/other/o")));
+        }
+        Assert.assertTrue(out.toString().endsWith("b:s b:p a:o .\n"));
+    }
+}